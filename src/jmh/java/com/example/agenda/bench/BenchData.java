@@ -0,0 +1,60 @@
+package com.example.agenda.bench;
+
+import com.example.agenda.Db;
+import com.example.agenda.bulk.BulkImporter;
+import com.example.agenda.bulk.ContactFormat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Carga la base H2 de pruebas ({@code test.db.*}) con datos sintéticos reproducibles. */
+final class BenchData {
+    private BenchData() {}
+
+    static String nombre(int n) {
+        return "Persona " + n;
+    }
+
+    static String direccion(int n) {
+        return "Calle " + (n % 500) + " nº " + n;
+    }
+
+    static List<String> telefonos(int n, int phonesPerPerson) {
+        List<String> phones = new ArrayList<>(phonesPerPerson);
+        for (int k = 0; k < phonesPerPerson; k++) {
+            phones.add(String.valueOf(600_000_000L + n * 10L + k));
+        }
+        return phones;
+    }
+
+    /** Vacía las tablas, inserta {@code persons} personas y devuelve sus ids en orden. */
+    static int[] seed(int persons, int phonesPerPerson) throws SQLException, IOException {
+        Db.setTestMode(true);
+        try (Connection con = Db.getConnection(); Statement st = con.createStatement()) {
+            st.executeUpdate("DELETE FROM Telefonos");
+            st.executeUpdate("DELETE FROM Personas");
+        }
+        StringBuilder csv = new StringBuilder("id,nombre,direccion,telefonos\n");
+        for (int n = 0; n < persons; n++) {
+            csv.append(n).append(',').append(nombre(n)).append(',').append(direccion(n)).append(',')
+               .append(String.join("|", telefonos(n, phonesPerPerson))).append('\n');
+        }
+        new BulkImporter().importFrom(new StringReader(csv.toString()), ContactFormat.CSV);
+
+        int[] ids = new int[persons];
+        try (Connection con = Db.getConnection(); Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT id FROM Personas ORDER BY id")) {
+            int i = 0;
+            while (rs.next() && i < ids.length) {
+                ids[i++] = rs.getInt(1);
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.agenda.bench;
+
+import com.example.agenda.Db;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/** Coste de pedir y devolver una conexión al pool de {@link Db}, con y sin competencia. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DbBenchmark {
+
+    @Setup(Level.Trial)
+    public void open() throws SQLException {
+        Db.setTestMode(true);
+        Db.pool().fill();
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        Db.shutdown();
+    }
+
+    @Benchmark
+    public boolean getConnection() throws SQLException {
+        try (Connection con = Db.getConnection()) {
+            return con.getAutoCommit();
+        }
+    }
+
+    /** Más hilos que {@code db.pool.maxSize} por defecto: incluye la espera en el semáforo. */
+    @Benchmark
+    @Threads(16)
+    public boolean getConnectionContended() throws SQLException {
+        try (Connection con = Db.getConnection()) {
+            return con.getAutoCommit();
+        }
+    }
+}
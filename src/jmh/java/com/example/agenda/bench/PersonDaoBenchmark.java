@@ -0,0 +1,172 @@
+package com.example.agenda.bench;
+
+import com.example.agenda.Db;
+import com.example.agenda.dao.PersonDao;
+import com.example.agenda.dao.PhoneFetchStrategy;
+import com.example.agenda.model.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operaciones de {@link PersonDao} sobre H2 en memoria. Cada método de benchmark parte de una
+ * base recién cargada con {@code persons} personas de {@code phonesPerPerson} teléfonos.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersonDaoBenchmark {
+    @Param({"10000"})
+    int persons;
+
+    @Param({"2"})
+    int phonesPerPerson;
+
+    @Param({"JOIN"})
+    PhoneFetchStrategy strategy;
+
+    PersonDao dao;
+    int[] ids;
+    final List<Integer> inserted = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void seed() throws Exception {
+        ids = BenchData.seed(persons, phonesPerPerson);
+        dao = new PersonDao(strategy);
+    }
+
+    @TearDown(Level.Iteration)
+    public void removeInserted() throws SQLException {
+        for (int id : inserted) {
+            dao.delete(id);
+        }
+        inserted.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() {
+        Db.shutdown();
+    }
+
+    int randomIndex() {
+        return ThreadLocalRandom.current().nextInt(ids.length);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Person> findAll() throws SQLException {
+        return dao.findAll();
+    }
+
+    /** Prefijo que coincide con unas pocas personas ("Persona 123" → 123, 1230..1239, ...). */
+    @Benchmark
+    public List<Person> findByName() throws SQLException {
+        return dao.findByName(BenchData.nombre(randomIndex() / 10 + 1));
+    }
+
+    @Benchmark
+    public Person findById() throws SQLException {
+        dao.getPersonCache().clear();
+        return dao.findById(ids[randomIndex()]);
+    }
+
+    @Benchmark
+    public Person insert() throws SQLException {
+        int n = persons + inserted.size();
+        Person p = new Person(0, BenchData.nombre(n), BenchData.direccion(n));
+        p.getTelefonos().setAll(BenchData.telefonos(n, phonesPerPerson));
+        dao.insert(p);
+        inserted.add(p.getId());
+        return p;
+    }
+
+    /** Cambia el nombre y deja los teléfonos: una fila de {@code Personas} y ninguna de {@code Telefonos}. */
+    @Benchmark
+    public Object updateName() throws SQLException {
+        int i = randomIndex();
+        Person p = new Person(ids[i], BenchData.nombre(i) + (ThreadLocalRandom.current().nextBoolean() ? "" : " *"),
+                BenchData.direccion(i));
+        p.getTelefonos().setAll(BenchData.telefonos(i, phonesPerPerson));
+        // La versión actual (de la caché): update comprueba que nadie la haya cambiado
+        p.setVersion(dao.findContact(ids[i]).getVersion());
+        return dao.update(p);
+    }
+
+    @Benchmark
+    public List<String> getTelefonos() throws SQLException {
+        return dao.getTelefonos(ids[randomIndex()]);
+    }
+
+    /** Añadir y quitar el mismo teléfono para que la base no crezca entre invocaciones. */
+    @Benchmark
+    public void addAndRemoveTelefono() throws SQLException {
+        int id = ids[randomIndex()];
+        dao.addTelefono(id, "699000000");
+        dao.removeTelefono(id, "699000000");
+    }
+
+    /**
+     * Borrar es destructivo: cada iteración inserta {@link DeleteState#BATCH} personas nuevas y
+     * mide el tiempo de borrarlas todas (resultado por lote, no por borrado).
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, batchSize = DeleteState.BATCH)
+    @Measurement(iterations = 10, batchSize = DeleteState.BATCH)
+    public void delete(DeleteState state) throws SQLException {
+        dao.delete(state.next());
+    }
+
+    @State(Scope.Benchmark)
+    public static class DeleteState {
+        static final int BATCH = 1000;
+        private int[] pending;
+        private int next;
+
+        // Depende de PersonDaoBenchmark para ejecutarse después de cargar la base
+        @Setup(Level.Iteration)
+        public void insertBatch(PersonDaoBenchmark bench) throws SQLException {
+            pending = new int[BATCH];
+            next = 0;
+            String sql = "INSERT INTO Personas (nombre, direccion) VALUES (?, ?)";
+            try (Connection con = Db.getConnection();
+                 PreparedStatement ps = con.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
+                for (int i = 0; i < BATCH; i++) {
+                    ps.setString(1, BenchData.nombre(-i));
+                    ps.setString(2, BenchData.direccion(i));
+                    ps.executeUpdate();
+                    try (var keys = ps.getGeneratedKeys()) {
+                        keys.next();
+                        pending[i] = keys.getInt(1);
+                    }
+                }
+            }
+        }
+
+        int next() {
+            return pending[next++];
+        }
+    }
+}
@@ -1,9 +1,100 @@
 package com.example.agenda;
 
+import com.example.agenda.dao.PersonDao;
+import com.example.agenda.model.Contact;
+
 import java.sql.*;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
 
+/**
+ * Comprueba la conexión. Con el argumento {@code informe} recorre además toda la agenda y muestra un
+ * resumen; con {@code planes} comprueba que las consultas principales usan sus índices (sale con código 1 si no);
+ * con {@code sincronizar}, si hay copia local, hace una ronda de sincronización con el servidor; con
+ * {@code numeros} rellena la forma canónica de los teléfonos antiguos y con {@code telefono <número>}
+ * muestra de quién es un número.
+ */
 public class AgendaDB {
+    // Consultas de PersonDao que no deben recorrer la tabla entera y los índices que les sirven.
+    // H2 suele preferir el índice que crea para la clave ajena, equivalente para buscar por personaId
+    static final String[][] INDEXED_QUERIES = {
+            {"Teléfonos de una persona", "SELECT telefono FROM Telefonos WHERE personaId = 1 ORDER BY id",
+                    "idx_telefonos_persona|fk_persona"},
+            {"Teléfonos por lotes", "SELECT personaId, telefono FROM Telefonos WHERE personaId IN (1, 2, 3) "
+                    + "ORDER BY personaId, id", "idx_telefonos_persona|fk_persona"},
+            {"Nombre por prefijo", "SELECT p.id, p.nombre, p.direccion, p.version FROM Personas p "
+                    + "WHERE p.nombre LIKE 'Jo%' ESCAPE '!' ORDER BY p.nombre, p.id LIMIT 50", "idx_personas_nombre"},
+            {"Dueños de un número", "SELECT DISTINCT personaId FROM Telefonos WHERE numero = 34600111222 "
+                    + "ORDER BY personaId", "idx_telefonos_numero"},
+    };
+
     public static void main(String[] args) {
+        boolean ok = true;
+        try {
+            ping();
+            if (args.length > 0 && args[0].equals("informe")) {
+                report();
+            } else if (args.length > 0 && args[0].equals("planes")) {
+                ok = checkPlans();
+            } else if (args.length > 0 && args[0].equals("sincronizar")) {
+                ok = syncNow();
+            } else if (args.length > 0 && args[0].equals("numeros")) {
+                ok = backfillNumbers();
+            } else if (args.length > 1 && args[0].equals("telefono")) {
+                ok = findOwners(args[1]);
+            }
+        } finally {
+            Db.shutdown();
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean syncNow() {
+        LocalSync sync = Db.localSync();
+        if (sync == null) {
+            System.out.println("No hay copia local: configura db.local.url en db.properties");
+            return false;
+        }
+        try {
+            System.out.println("Sincronización: " + sync.syncOnce());
+            return true;
+        } catch (SQLException e) {
+            System.err.println("No se pudo sincronizar con el servidor: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean backfillNumbers() {
+        try {
+            int filled = new PersonDao().backfillPhoneNumbers(Db.getInt("db.batch.chunkSize", 500));
+            System.out.println("Teléfonos normalizados: " + filled);
+            return true;
+        } catch (SQLException e) {
+            System.err.println("No se pudieron normalizar los teléfonos: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean findOwners(String telefono) {
+        try {
+            List<Contact> owners = new PersonDao().findByPhone(telefono);
+            if (owners.isEmpty()) {
+                System.out.println("Nadie tiene el número " + telefono);
+            }
+            for (Contact c : owners) {
+                System.out.println(c.getId() + "\t" + c.getNombre() + "\t" + String.join(", ", c.getTelefonos()));
+            }
+            return true;
+        } catch (SQLException e) {
+            System.err.println("No se pudo buscar el número: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static void ping() {
         try (Connection con = Db.getConnection()) {
             DatabaseMetaData meta = con.getMetaData();
             System.out.println("Conectado a: " + meta.getDatabaseProductName() + " " + meta.getDatabaseProductVersion());
@@ -20,11 +111,79 @@ public class AgendaDB {
                     }
                 }
             } catch (SQLException e) {
-                System.out.println("Aún no existe la tabla Personas. Ejecuta schema.sql en tu DB.");
+                System.out.println("Aún no existe la tabla Personas. Revisa db.migrate en db.properties.");
             }
         } catch (Exception e) {
             e.printStackTrace();
             System.err.println("No se pudo conectar. Revisa db.properties y que MariaDB esté activo.");
         }
     }
+
+    // Lee la tabla en streaming: la memoria usada no depende del número de personas
+    private static void report() {
+        long personas = 0;
+        long telefonos = 0;
+        long sinTelefono = 0;
+        int maxTelefonos = 0;
+        try (Stream<Contact> contacts = new PersonDao().stream(null)) {
+            Iterator<Contact> it = contacts.iterator();
+            while (it.hasNext()) {
+                int n = it.next().getTelefonos().size();
+                personas++;
+                telefonos += n;
+                if (n == 0) sinTelefono++;
+                maxTelefonos = Math.max(maxTelefonos, n);
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("No se pudo generar el informe: " + e.getMessage());
+            return;
+        }
+        System.out.println("Personas: " + personas);
+        System.out.println("Teléfonos: " + telefonos + " (máx. " + maxTelefonos + " por persona)");
+        System.out.println("Personas sin teléfono: " + sinTelefono);
+    }
+
+    private static boolean checkPlans() {
+        boolean ok = true;
+        try (Connection con = Db.getConnection(); Statement st = con.createStatement()) {
+            for (String[] q : INDEXED_QUERIES) {
+                String plan = explain(st, q[1]);
+                boolean used = usesIndex(plan, q[2]);
+                System.out.println((used ? "OK    " : "FALLA ") + q[0] + " (" + q[2].replace("|", " o ") + ")");
+                if (!used) {
+                    System.out.println(plan);
+                    ok = false;
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("No se pudieron comprobar los planes: " + e.getMessage());
+            return false;
+        }
+        return ok;
+    }
+
+    /** Salida de {@code EXPLAIN} de {@code sql}, una fila por línea. */
+    static String explain(Statement st, String sql) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (ResultSet rs = st.executeQuery("EXPLAIN " + sql)) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                for (int i = 1; i <= columns; i++) {
+                    plan.append(rs.getString(i)).append(' ');
+                }
+                plan.append('\n');
+            }
+        }
+        return plan.toString().trim();
+    }
+
+    /** Si el plan usa alguno de los índices de {@code indexes} (separados por {@code |}). */
+    static boolean usesIndex(String plan, String indexes) {
+        for (String index : indexes.split("\\|")) {
+            if (plan.toLowerCase().contains(index.toLowerCase())) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -1,18 +1,50 @@
 package com.example.agenda;
 
+import com.example.agenda.dao.PersonDao;
+import com.example.agenda.dao.SearchIndex;
+import com.example.agenda.service.PersonService;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
 
 public class App extends Application {
+    private MainController controller;
+
     @Override
     public void start(Stage stage) throws Exception {
+        // El driver, las migraciones y el pool se preparan en segundo plano mientras se carga la vista
+        PersonDao dao = new PersonDao();
+        dao.setSearchIndex(new SearchIndex());
+        PersonService service = new PersonService(dao);
+        service.submit(Db::pool);
+
         FXMLLoader fxml = new FXMLLoader(App.class.getResource("main-view.fxml"));
+        fxml.setControllerFactory(type -> type == MainController.class
+                ? new MainController(service) : newController(type));
         Scene scene = new Scene(fxml.load(), 900, 600);
+        controller = fxml.getController();
         stage.setTitle("Agenda CRUD • Personas + Teléfonos");
         stage.setScene(scene);
         stage.show();
+        Platform.runLater(Startup::windowShown);
+    }
+
+    private static Object newController(Class<?> type) {
+        try {
+            return type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No se pudo crear el controlador " + type.getName(), e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (controller != null) {
+            controller.shutdown();
+        }
+        Db.shutdown();
     }
 
     public static void main(String[] args) {
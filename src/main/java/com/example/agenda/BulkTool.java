@@ -0,0 +1,56 @@
+package com.example.agenda;
+
+import com.example.agenda.bulk.BulkExporter;
+import com.example.agenda.bulk.BulkImporter;
+import com.example.agenda.bulk.BulkStats;
+import com.example.agenda.bulk.ContactFormat;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Importación/exportación masiva desde la línea de comandos:
+ * <pre>
+ *   BulkTool import contactos.csv|.jsonl [batchSize] [commitSize]
+ *   BulkTool export contactos.csv|.jsonl [fetchSize]
+ * </pre>
+ */
+public class BulkTool {
+    public static void main(String[] args) {
+        if (args.length < 2 || !(args[0].equals("import") || args[0].equals("export"))) {
+            System.err.println("Uso: BulkTool import <fichero.csv|.jsonl> [batchSize] [commitSize]");
+            System.err.println("     BulkTool export <fichero.csv|.jsonl> [fetchSize]");
+            System.exit(2);
+        }
+        Path file = Path.of(args[1]);
+        try {
+            ContactFormat format = ContactFormat.fromFileName(file.getFileName().toString());
+            BulkStats stats;
+            if (args[0].equals("import")) {
+                BulkImporter importer = new BulkImporter(
+                        args.length > 2 ? Integer.parseInt(args[2]) : BulkImporter.DEFAULT_BATCH_SIZE,
+                        args.length > 3 ? Integer.parseInt(args[3]) : BulkImporter.DEFAULT_COMMIT_SIZE);
+                try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    stats = importer.importFrom(in, format);
+                }
+                System.out.println("Importados " + stats);
+            } else {
+                BulkExporter exporter = new BulkExporter(
+                        args.length > 2 ? Integer.parseInt(args[2]) : BulkExporter.DEFAULT_FETCH_SIZE);
+                try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    stats = exporter.exportTo(out, format);
+                }
+                System.out.println("Exportados " + stats);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("La operación no se completó: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            Db.shutdown();
+        }
+    }
+}
@@ -0,0 +1,503 @@
+package com.example.agenda;
+
+import com.example.agenda.dao.LruCache;
+import com.example.agenda.metrics.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool acotado de conexiones JDBC. Las conexiones que entrega son envoltorios
+ * cuyo {@code close()} devuelve la conexión física al pool en lugar de cerrarla.
+ * <p>
+ * Cada conexión física guarda además sus últimas {@code statementCacheSize} sentencias
+ * preparadas (LRU, por texto SQL): un {@code prepareStatement} repetido reutiliza la sentencia
+ * ya analizada y planificada, y su {@code close()} sólo la devuelve a la caché.
+ */
+public class ConnectionPool implements ConnectionPoolMXBean, AutoCloseable {
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMs;
+    private final long idleTimeoutMs;
+    private final long maxLifetimeMs;
+    private final int validationTimeoutSec;
+    private final int statementCacheSize;
+
+    private final Semaphore permits;
+    private final Deque<PhysicalConnection> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService housekeeper;
+    private int total;
+    private volatile boolean closed;
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
+    public ConnectionPool(String url, String user, String password,
+                          int minSize, int maxSize,
+                          long borrowTimeoutMs, long idleTimeoutMs, long maxLifetimeMs,
+                          int validationTimeoutSec) {
+        this(url, user, password, minSize, maxSize, borrowTimeoutMs, idleTimeoutMs, maxLifetimeMs,
+                validationTimeoutSec, 0);
+    }
+
+    public ConnectionPool(String url, String user, String password,
+                          int minSize, int maxSize,
+                          long borrowTimeoutMs, long idleTimeoutMs, long maxLifetimeMs,
+                          int validationTimeoutSec, int statementCacheSize) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Tamaño de pool inválido: min=" + minSize + ", max=" + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.maxLifetimeMs = maxLifetimeMs;
+        this.validationTimeoutSec = validationTimeoutSec;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "agenda-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, Math.min(idleTimeoutMs, maxLifetimeMs) / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** Presta una conexión; el tiempo de espera queda en la métrica {@code pool.acquire}. */
+    public Connection getConnection() throws SQLException {
+        return Metrics.measure("pool.acquire", null, null, this::borrow);
+    }
+
+    private Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("El pool de conexiones está cerrado");
+        }
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new SQLTimeoutException("No hay conexiones libres tras " + borrowTimeoutMs
+                        + " ms (máximo " + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido esperando una conexión del pool", e);
+        }
+        try {
+            PhysicalConnection pc;
+            while ((pc = pollIdle()) != null) {
+                if (pc.isExpired(System.currentTimeMillis()) || !pc.isValid()) {
+                    discard(pc);
+                    continue;
+                }
+                return pc.lease();
+            }
+            return open().lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /** Abre conexiones hasta alcanzar el mínimo configurado. */
+    public void fill() {
+        while (!closed) {
+            // Con un permiso, como un préstamo: entre fill() y borrow() nunca hay más de maxSize conexiones
+            if (!permits.tryAcquire()) {
+                return;
+            }
+            try {
+                synchronized (this) {
+                    if (idle.size() >= minSize || total >= maxSize) {
+                        return;
+                    }
+                    total++;
+                }
+                PhysicalConnection pc = connect();
+                synchronized (this) {
+                    idle.addLast(pc);
+                }
+            } catch (SQLException e) {
+                System.err.println("No se pudo abrir conexión para el pool: " + e.getMessage());
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    @Override public synchronized int getTotalConnections() { return total; }
+    @Override public synchronized int getIdleConnections() { return idle.size(); }
+    @Override public int getActiveConnections() { return maxSize - permits.availablePermits(); }
+    @Override public int getMaxSize() { return maxSize; }
+    @Override public int getThreadsAwaitingConnection() { return permits.getQueueLength(); }
+
+    @Override public long getStatementCacheHits() { return statementHits.get(); }
+    @Override public long getStatementCacheMisses() { return statementMisses.get(); }
+
+    /** Fracción de {@code prepareStatement} servidos desde la caché de sentencias. */
+    @Override
+    public double getStatementCacheHitRatio() {
+        long hits = statementHits.get();
+        long total = hits + statementMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        List<PhysicalConnection> toClose;
+        synchronized (this) {
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+        }
+        toClose.forEach(this::discard);
+    }
+
+    private synchronized PhysicalConnection pollIdle() {
+        // LIFO: la conexión usada más recientemente es la que menos probabilidad tiene de estar caída
+        return idle.pollFirst();
+    }
+
+    private PhysicalConnection open() throws SQLException {
+        synchronized (this) {
+            total++;
+        }
+        return connect();
+    }
+
+    // El hueco en total ya está reservado; se libera si la conexión no llega a abrirse
+    private PhysicalConnection connect() throws SQLException {
+        try {
+            return new PhysicalConnection(DriverManager.getConnection(url, user, password));
+        } catch (SQLException | RuntimeException e) {
+            synchronized (this) {
+                total--;
+            }
+            throw e;
+        }
+    }
+
+    private void discard(PhysicalConnection pc) {
+        synchronized (this) {
+            total--;
+        }
+        try {
+            pc.connection.close();
+        } catch (SQLException ignored) {
+            // La conexión ya no sirve; no hay nada más que hacer
+        }
+    }
+
+    private void release(PhysicalConnection pc, boolean broken) {
+        try {
+            if (!broken && !closed && !pc.isExpired(System.currentTimeMillis())) {
+                try {
+                    pc.reset();
+                    pc.lastUsed = System.currentTimeMillis();
+                    synchronized (this) {
+                        idle.addFirst(pc);
+                    }
+                    return;
+                } catch (SQLException e) {
+                    // Estado no recuperable: se descarta
+                }
+            }
+            discard(pc);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        List<PhysicalConnection> evicted = new ArrayList<>();
+        synchronized (this) {
+            int keep = idle.size();
+            for (var it = idle.descendingIterator(); it.hasNext(); ) {
+                PhysicalConnection pc = it.next();
+                boolean idleTooLong = now - pc.lastUsed > idleTimeoutMs && keep > minSize;
+                if (idleTooLong || pc.isExpired(now)) {
+                    it.remove();
+                    evicted.add(pc);
+                    keep--;
+                }
+            }
+        }
+        evicted.forEach(this::discard);
+        fill();
+    }
+
+    private final class PhysicalConnection {
+        private final Connection connection;
+        private final long createdAt = System.currentTimeMillis();
+        private long lastUsed = createdAt;
+        // Sólo la usa el hilo que tiene la conexión prestada
+        private final LruCache<String, CachedStatement> statements;
+
+        PhysicalConnection(Connection connection) {
+            this.connection = connection;
+            this.statements = statementCacheSize > 0
+                    ? new LruCache<>(statementCacheSize, (sql, cs) -> cs.evict())
+                    : null;
+        }
+
+        PreparedStatement prepare(Lease lease, Method method, Object[] args) throws Throwable {
+            // La clave incluye el resto de argumentos: RETURN_GENERATED_KEYS, tipo de ResultSet...
+            String key = args.length == 1 ? (String) args[0]
+                    : args[0] + "\u0000" + Arrays.deepToString(Arrays.copyOfRange(args, 1, args.length));
+            CachedStatement cs = statements.peek(key);
+            if (cs != null && !cs.inUse) {
+                if (!cs.statement.isClosed()) {
+                    statementHits.incrementAndGet();
+                    return cs.borrow(lease);
+                }
+                statements.remove(key);
+                cs = null;
+            }
+            statementMisses.incrementAndGet();
+            PreparedStatement ps = (PreparedStatement) method.invoke(connection, args);
+            // Si la misma sentencia ya está en uso en esta conexión, la nueva no se guarda
+            CachedStatement fresh = new CachedStatement(this, ps, cs == null ? key : null);
+            if (cs == null) {
+                statements.put(key, fresh);
+            }
+            return fresh.borrow(lease);
+        }
+
+        boolean isExpired(long now) {
+            return maxLifetimeMs > 0 && now - createdAt > maxLifetimeMs;
+        }
+
+        boolean isValid() {
+            try {
+                return connection.isValid(validationTimeoutSec);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        void reset() throws SQLException {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            connection.clearWarnings();
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    new Lease(this));
+        }
+    }
+
+    private final class Lease implements InvocationHandler {
+        private final PhysicalConnection pc;
+        private Connection proxy;
+        private List<StatementHandle> open;
+        private boolean returned;
+        private boolean broken;
+
+        Lease(PhysicalConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        // Como en JDBC, cerrar la conexión cierra sus sentencias (aquí: las devuelve a la caché)
+                        while (open != null && !open.isEmpty()) {
+                            try {
+                                open.get(open.size() - 1).close();
+                            } catch (SQLException e) {
+                                broken = true;
+                            }
+                        }
+                        returned = true;
+                        release(pc, broken);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pc.connection.isClosed();
+                case "unwrap":
+                case "isWrapperFor":
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pc.connection + "]";
+                default:
+                    if (returned) {
+                        throw new SQLException("La conexión ya fue devuelta al pool");
+                    }
+            }
+            try {
+                if (pc.statements != null && method.getName().equals("prepareStatement")) {
+                    this.proxy = (Connection) proxy;
+                    return pc.prepare(this, method, args);
+                }
+                return method.invoke(pc.connection, args);
+            } catch (InvocationTargetException e) {
+                throw failed(e.getCause());
+            }
+        }
+
+        Throwable failed(Throwable cause) {
+            // Clase 08: errores de conexión
+            if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                if (state != null && state.startsWith("08")) {
+                    broken = true;
+                }
+            }
+            return cause;
+        }
+    }
+
+    /** Sentencia preparada de una conexión física, guardada en su caché mientras no se expulse. */
+    private final class CachedStatement {
+        private final PhysicalConnection pc;
+        private final PreparedStatement statement;
+        private final String key;
+        private boolean inUse;
+        private boolean evicted;
+        private boolean dirty;
+
+        /** {@code key == null}: sentencia fuera de la caché, se cierra al devolverla. */
+        CachedStatement(PhysicalConnection pc, PreparedStatement statement, String key) {
+            this.pc = pc;
+            this.statement = statement;
+            this.key = key;
+            this.evicted = key == null;
+        }
+
+        PreparedStatement borrow(Lease lease) {
+            inUse = true;
+            dirty = false;
+            StatementHandle handle = new StatementHandle(this, lease);
+            if (lease.open == null) {
+                lease.open = new ArrayList<>(4);
+            }
+            lease.open.add(handle);
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    handle);
+        }
+
+        void giveBack() throws SQLException {
+            inUse = false;
+            if (dirty && !evicted) {
+                // Con ajustes cambiados (fetchSize, maxRows...) no se reutiliza
+                evicted = true;
+                pc.statements.remove(key);
+            }
+            if (evicted) {
+                statement.close();
+                return;
+            }
+            statement.clearParameters();
+            statement.clearBatch();
+        }
+
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                try {
+                    statement.close();
+                } catch (SQLException ignored) {
+                    // Se cerrará con la conexión
+                }
+            }
+        }
+    }
+
+    private static final class StatementHandle implements InvocationHandler {
+        private final CachedStatement cs;
+        private final Lease lease;
+        private boolean closed;
+
+        StatementHandle(CachedStatement cs, Lease lease) {
+            this.cs = cs;
+            this.lease = lease;
+        }
+
+        void close() throws SQLException {
+            if (!closed) {
+                closed = true;
+                lease.open.remove(this);
+                cs.giveBack();
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getConnection":
+                    return lease.proxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached[" + cs.statement + "]";
+                case "setFetchSize":
+                case "setFetchDirection":
+                case "setMaxRows":
+                case "setLargeMaxRows":
+                case "setMaxFieldSize":
+                case "setQueryTimeout":
+                case "setEscapeProcessing":
+                case "setCursorName":
+                case "setPoolable":
+                case "closeOnCompletion":
+                    cs.dirty = true;
+                    break;
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("La sentencia ya está cerrada");
+            }
+            try {
+                return method.invoke(cs.statement, args);
+            } catch (InvocationTargetException e) {
+                throw lease.failed(e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.agenda;
+
+/** Vista JMX del pool: {@code com.example.agenda:type=ConnectionPool,name=<default|test>}. */
+public interface ConnectionPoolMXBean {
+    int getTotalConnections();
+    int getIdleConnections();
+    int getActiveConnections();
+    int getMaxSize();
+    /** Hilos esperando una conexión libre (aproximado). */
+    int getThreadsAwaitingConnection();
+    long getStatementCacheHits();
+    long getStatementCacheMisses();
+    double getStatementCacheHitRatio();
+}
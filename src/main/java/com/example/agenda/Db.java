@@ -1,17 +1,37 @@
 package com.example.agenda;
 
+import com.example.agenda.metrics.Metrics;
+
 import java.io.InputStream;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+/**
+ * Conexiones a la base de datos. {@link #getConnection()} va siempre al primario ({@code db.url});
+ * {@link #getReadConnection()} reparte las lecturas entre las réplicas de {@code db.replicas}
+ * y vuelve al primario si no hay ninguna disponible o si este proceso ha escrito hace menos de
+ * {@code db.replica.stickyMs}, para que siempre se lean los propios cambios.
+ * <p>
+ * Con {@code db.local.url} la aplicación trabaja sobre una copia local en H2 (lecturas y escrituras)
+ * y {@link LocalSync} la sincroniza en segundo plano con {@code db.url}, que pasa a ser el servidor.
+ */
 public class Db {
     private static final Properties props = new Properties();
+    private static final Map<String, ConnectionPool> pools = new ConcurrentHashMap<>();
+    private static final Map<String, ReplicaRouter> routers = new ConcurrentHashMap<>();
+    // Con copia local: el servidor y quien sincroniza con él
+    private static final Map<String, ConnectionPool> remotes = new ConcurrentHashMap<>();
+    private static final Map<String, LocalSync> localSyncs = new ConcurrentHashMap<>();
     private static boolean testMode = false;
-    private static boolean initialized = false;
+    private static volatile long lastWriteNanos;
+    private static volatile boolean written;
 
     static {
         try (InputStream in = Db.class.getResourceAsStream("db.properties")) {
@@ -29,52 +49,305 @@ public class Db {
         testMode = enabled;
     }
 
+    /**
+     * Cambia (o quita, con {@code null}) una clave de {@code db.properties} en memoria, por ejemplo para que
+     * las pruebas usen sus propias bases de datos con las claves {@code test.*}. Sólo afecta a lo que se
+     * abra después: los pools ya creados se conservan hasta {@link #shutdown()}.
+     */
+    public static void setProperty(String key, String value) {
+        if (value == null) {
+            props.remove(key);
+        } else {
+            props.setProperty(key, value);
+        }
+    }
+
+    /** Conexión al primario (o a la copia local): escrituras y lecturas que deben ver el último dato. */
     public static Connection getConnection() throws SQLException {
-        String prefix = testMode ? "test." : "";
-        String url = props.getProperty(prefix + "db.url");
-        String user = props.getProperty(prefix + "db.user");
-        String password = props.getProperty(prefix + "db.password");
-        String driver = props.getProperty(prefix + "db.driver");
+        return pool().getConnection();
+    }
+
+    /** Conexión para lecturas que toleran el retraso de replicación. */
+    public static Connection getReadConnection() throws SQLException {
+        if (isLocal(prefix())) {
+            return getConnection();
+        }
+        ReplicaRouter router = router();
+        if (router.isEmpty() || readOwnWrites()) {
+            return getConnection();
+        }
+        Connection replica = router.getConnection();
+        return replica != null ? replica : getConnection();
+    }
+
+    /** Anota que se acaba de confirmar una escritura en el primario. */
+    public static void markWrite() {
+        lastWriteNanos = System.nanoTime();
+        written = true;
+        LocalSync sync = localSyncs.get(prefix());
+        if (sync != null) {
+            sync.requestFlush();
+        }
+    }
+
+    /** Sincronización con el servidor si se usa copia local ({@code db.local.url}); si no, {@code null}. */
+    static LocalSync localSync() {
+        return localSyncs.get(prefix());
+    }
+
+    private static boolean readOwnWrites() {
+        return written && System.nanoTime() - lastWriteNanos
+                < TimeUnit.MILLISECONDS.toNanos(getInt("db.replica.stickyMs", 2_000));
+    }
+
+    public static ConnectionPool pool() throws SQLException {
+        String prefix = prefix();
+        ConnectionPool pool = pools.get(prefix);
+        if (pool == null) {
+            synchronized (pools) {
+                pool = pools.get(prefix);
+                if (pool == null) {
+                    pool = isLocal(prefix) ? createLocalStore(prefix) : createPrimaryPool(prefix);
+                    pools.put(prefix, pool);
+                }
+            }
+        }
+        return pool;
+    }
+
+    // Con copia local, el servidor: lo abre el hilo de sincronización y, si no responde, lo reintenta
+    private static ConnectionPool remotePool(String prefix) throws SQLException {
+        ConnectionPool pool = remotes.get(prefix);
+        if (pool == null) {
+            synchronized (remotes) {
+                pool = remotes.get(prefix);
+                if (pool == null) {
+                    pool = createPrimaryPool(prefix);
+                    remotes.put(prefix, pool);
+                }
+            }
+        }
+        return pool;
+    }
+
+    private static ConnectionPool createPrimaryPool(String prefix) throws SQLException {
+        return createPool(prefix, poolName(prefix),
+                props.getProperty(prefix + "db.url"),
+                props.getProperty(prefix + "db.user"),
+                props.getProperty(prefix + "db.password"),
+                props.getProperty(prefix + "db.driver"),
+                true);
+    }
+
+    private static boolean isLocal(String prefix) {
+        return !props.getProperty(prefix + "db.local.url", "").isBlank();
+    }
+
+    private static ConnectionPool createLocalStore(String prefix) throws SQLException {
+        String url = props.getProperty(prefix + "db.local.url").trim();
+        if (!url.startsWith("jdbc:h2:")) {
+            throw new SQLException("La copia local debe ser una base de datos H2: " + prefix + "db.local.url=" + url);
+        }
+        String name = poolName(prefix) + ".local";
+        ConnectionPool pool = createPool(prefix, name, url,
+                props.getProperty(prefix + "db.local.user", "sa"),
+                props.getProperty(prefix + "db.local.password", ""),
+                "org.h2.Driver", true);
+        try {
+            LocalSync sync = new LocalSync(name, pool, () -> remotePool(prefix),
+                    intProperty(prefix, "db.local.batchSize", 200),
+                    longProperty(prefix, "db.local.syncMs", 5_000),
+                    longProperty(prefix, "db.local.flushDelayMs", 500),
+                    longProperty(prefix, "db.local.retryMaxMs", 60_000),
+                    longProperty(prefix, "sync.gapTimeoutMs", 60_000),
+                    TimeUnit.DAYS.toMillis(intProperty(prefix, "sync.retentionDays", 7)));
+            localSyncs.put(prefix, sync);
+            sync.start();
+        } catch (SQLException e) {
+            pool.close();
+            unregister(name);
+            throw e;
+        }
+        return pool;
+    }
+
+    private static ReplicaRouter router() throws SQLException {
+        String prefix = prefix();
+        ReplicaRouter router = routers.get(prefix);
+        if (router == null) {
+            synchronized (pools) {
+                router = routers.get(prefix);
+                if (router == null) {
+                    router = createRouter(prefix);
+                    routers.put(prefix, router);
+                }
+            }
+        }
+        return router;
+    }
 
+    /** Valor entero de {@code db.properties}; en modo prueba tiene prioridad la clave {@code test.*}. */
+    public static int getInt(String key, int defaultValue) {
+        return intProperty(prefix(), key, defaultValue);
+    }
+
+    public static String getString(String key, String defaultValue) {
+        String value = props.getProperty(prefix() + key, props.getProperty(key));
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    public static void shutdown() {
+        synchronized (pools) {
+            localSyncs.values().forEach(LocalSync::close);
+            localSyncs.clear();
+            remotes.forEach((prefix, pool) -> {
+                pool.close();
+                unregister(poolName(prefix));
+            });
+            remotes.clear();
+            routers.forEach((prefix, router) -> {
+                router.close();
+                router.getReplicas().forEach(r -> unregister(poolName(prefix) + "." + r.name));
+            });
+            routers.clear();
+            pools.forEach((prefix, pool) -> {
+                pool.close();
+                unregister(poolName(prefix) + (isLocal(prefix) ? ".local" : ""));
+            });
+            pools.clear();
+            Metrics.stopReporting();
+        }
+    }
+
+    private static String prefix() {
+        return testMode ? "test." : "";
+    }
+
+    private static String poolName(String prefix) {
+        return prefix.isEmpty() ? "default" : "test";
+    }
+
+    private static void unregister(String name) {
+        Metrics.unregister("type=ConnectionPool,name=" + name);
+        Metrics.removeGauge("pool." + name);
+    }
+
+    private static ReplicaRouter createRouter(String prefix) throws SQLException {
+        String primaryUrl = props.getProperty(prefix + "db.url");
+        List<ReplicaRouter.Replica> replicas = new ArrayList<>();
+        String names = props.getProperty(prefix + "db.replicas", "").trim();
+        for (String name : names.isEmpty() ? new String[0] : names.split("\\s*,\\s*")) {
+            String key = prefix + "db.replica." + name + ".";
+            String url = props.getProperty(key + "url", "").trim();
+            if (url.isEmpty()) {
+                throw new SQLException("Falta " + key + "url para la réplica " + name);
+            }
+            // Usuario, contraseña y driver se heredan del primario si la réplica no los define
+            String driver = props.getProperty(key + "driver", props.getProperty(prefix + "db.driver"));
+            ConnectionPool pool = createPool(prefix, poolName(prefix) + "." + name, url,
+                    props.getProperty(key + "user", props.getProperty(prefix + "db.user")),
+                    props.getProperty(key + "password", props.getProperty(prefix + "db.password")),
+                    driver, false);
+            ReplicaRouter.Replica replica = new ReplicaRouter.Replica(name, pool);
+            // Una H2 distinta del primario hace de réplica en local: necesita sus propias tablas.
+            // Una réplica real recibe el esquema del primario por replicación
+            if (driver.contains("h2") && !url.equals(primaryUrl)) {
+                try {
+                    migrate(poolName(prefix) + "." + name, pool);
+                } catch (SQLException e) {
+                    System.err.println("Réplica " + name + " no disponible: " + e.getMessage());
+                    replica.healthy = false;
+                }
+            }
+            replicas.add(replica);
+        }
+        return new ReplicaRouter(poolName(prefix), replicas,
+                longProperty(prefix, "db.replica.healthCheckMs", 5_000),
+                intProperty(prefix, "db.pool.validationTimeoutSec", 2));
+    }
+
+    private static ConnectionPool createPool(String prefix, String name, String url, String user, String password,
+                                             String driver, boolean migrate) throws SQLException {
         try {
             Class.forName(driver);
         } catch (ClassNotFoundException e) {
             throw new SQLException("No se pudo cargar el driver JDBC: " + driver, e);
         }
-        
-        Connection connection = DriverManager.getConnection(url, user, password);
-        
-        // Inicializar tablas si es H2 y no se ha hecho antes
-        if (!initialized && driver.contains("h2")) {
-            initializeTables(connection);
-            initialized = true;
-        }
-        
-        return connection;
-    }
-    
-    private static void initializeTables(Connection connection) throws SQLException {
-        try (InputStream schemaStream = Db.class.getResourceAsStream("schema.sql");
-             Statement stmt = connection.createStatement()) {
-            
-            if (schemaStream != null) {
-                Scanner scanner = new Scanner(schemaStream).useDelimiter("\\A");
-                String schema = scanner.hasNext() ? scanner.next() : "";
-                
-                // Ejecutar cada statement del schema
-                String[] statements = schema.split(";");
-                for (String sql : statements) {
-                    sql = sql.trim();
-                    if (!sql.isEmpty()) {
-                        stmt.executeUpdate(sql);
-                    }
-                }
-                
-                System.out.println("Tablas inicializadas correctamente en H2");
+
+        ConnectionPool pool = new ConnectionPool(driverUrl(url), user, password,
+                intProperty(prefix, "db.pool.minSize", 1),
+                intProperty(prefix, "db.pool.maxSize", 10),
+                longProperty(prefix, "db.pool.borrowTimeoutMs", 5_000),
+                longProperty(prefix, "db.pool.idleTimeoutMs", 600_000),
+                longProperty(prefix, "db.pool.maxLifetimeMs", 1_800_000),
+                intProperty(prefix, "db.pool.validationTimeoutSec", 2),
+                intProperty(prefix, "db.pool.statementCacheSize", 64));
+
+        if (migrate && booleanProperty(prefix, "db.migrate", true)) {
+            try {
+                migrate(name, pool);
+            } catch (SQLException e) {
+                pool.close();
+                throw e;
+            }
+        }
+        pool.fill();
+
+        Metrics.register("type=ConnectionPool,name=" + name, pool);
+        Metrics.gauge("pool." + name, out -> {
+            String label = "pool=\"" + name + "\"";
+            out.append("# TYPE agenda_db_pool_connections gauge\n");
+            Metrics.sample(out, "agenda_db_pool_connections", label + ",state=\"active\"", pool.getActiveConnections());
+            Metrics.sample(out, "agenda_db_pool_connections", label + ",state=\"idle\"", pool.getIdleConnections());
+            Metrics.sample(out, "agenda_db_pool_connections_max", label, pool.getMaxSize());
+            out.append("# TYPE agenda_db_pool_waiting_threads gauge\n");
+            Metrics.sample(out, "agenda_db_pool_waiting_threads", label, pool.getThreadsAwaitingConnection());
+            out.append("# TYPE agenda_db_statement_cache_hit_ratio gauge\n");
+            Metrics.sample(out, "agenda_db_statement_cache_hit_ratio", label, pool.getStatementCacheHitRatio());
+        });
+        Metrics.startReporting();
+        return pool;
+    }
+
+    /**
+     * Con MariaDB Connector/J, un {@code INSERT} de varias filas sólo devuelve la primera clave generada
+     * salvo que se pida {@code returnMultiValuesGeneratedIds}; la importación masiva necesita todas.
+     */
+    static String driverUrl(String url) {
+        if (!url.startsWith("jdbc:mariadb:") || url.contains("returnMultiValuesGeneratedIds")) {
+            return url;
+        }
+        return url + (url.indexOf('?') >= 0 ? "&" : "?") + "returnMultiValuesGeneratedIds=true";
+    }
+
+    private static boolean booleanProperty(String prefix, String key, boolean defaultValue) {
+        String value = props.getProperty(prefix + key, props.getProperty(key));
+        return value == null || value.isBlank() ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    private static int intProperty(String prefix, String key, int defaultValue) {
+        return (int) longProperty(prefix, key, defaultValue);
+    }
+
+    private static long longProperty(String prefix, String key, long defaultValue) {
+        String value = props.getProperty(prefix + key, props.getProperty(key));
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Valor inválido para " + prefix + key + ": " + value, e);
+        }
+    }
+
+    private static void migrate(String name, ConnectionPool pool) throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            List<Integer> applied = Migrations.migrate(connection);
+            if (!applied.isEmpty()) {
+                System.out.println("Migraciones aplicadas en " + name + ": V" + applied.stream()
+                        .map(String::valueOf).collect(Collectors.joining(", V")));
             }
-        } catch (Exception e) {
-            System.err.println("Error inicializando tablas: " + e.getMessage());
-            // No lanzamos excepción para que la app pueda continuar
         }
     }
 }
@@ -0,0 +1,15 @@
+package com.example.agenda;
+
+/**
+ * Punto de entrada para ejecutar la aplicación desde un classpath de jars ({@code java -jar}, perfil
+ * {@code cds}). JavaFX no arranca si la clase principal es la propia {@link javafx.application.Application}
+ * y sus módulos no están en el module path.
+ */
+public final class Launcher {
+    private Launcher() {
+    }
+
+    public static void main(String[] args) {
+        App.main(args);
+    }
+}
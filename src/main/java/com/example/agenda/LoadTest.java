@@ -0,0 +1,280 @@
+package com.example.agenda;
+
+import com.example.agenda.dao.PersonDao;
+import com.example.agenda.dao.StaleDataException;
+import com.example.agenda.metrics.LatencyHistogram;
+import com.example.agenda.model.Contact;
+import com.example.agenda.model.Person;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Prueba de carga sin interfaz contra la base de datos configurada (con la configuración por defecto,
+ * H2 en memoria). Cada cliente simulado tiene su propio {@link PersonDao}, como una aplicación abierta,
+ * y repite durante un tiempo fijo una mezcla de operaciones elegidas al azar según su peso:
+ * <pre>
+ *   LoadTest [clientes] [segundos] [personas] [mezcla]
+ *   LoadTest 200 60 10000 buscar=40,detalle=40,guardar=10,telefono=10
+ * </pre>
+ * Si la agenda tiene menos de {@code personas}, añade las que faltan. Cada segundo muestra las
+ * operaciones por segundo y el uso del pool; al final, por operación, los percentiles de latencia y
+ * los errores. Los conflictos de versión son esperables con varios clientes y se cuentan aparte;
+ * cualquier otro error (interbloqueos incluidos) hace que termine con código 1.
+ */
+public class LoadTest {
+    static final String DEFAULT_MIX = "buscar=40,detalle=40,guardar=10,telefono=10";
+    private static final String[] OPERATIONS = {"buscar", "detalle", "guardar", "telefono"};
+    private static final String[] NOMBRES = {"Ana", "Luis", "Marta", "Jorge", "Lucía", "Pablo", "Elena", "Carlos", "Sara", "Diego"};
+
+    /** Una operación de la mezcla con sus tiempos y errores. */
+    private static final class Op {
+        final String name;
+        final int weight;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder conflicts = new LongAdder();
+        final LongAdder deadlocks = new LongAdder();
+        final LongAdder lockTimeouts = new LongAdder();
+        final LongAdder poolTimeouts = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final AtomicReference<String> firstError = new AtomicReference<>();
+
+        Op(String name, int weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+
+        long failures() {
+            return deadlocks.sum() + lockTimeouts.sum() + poolTimeouts.sum() + errors.sum();
+        }
+    }
+
+    public static void main(String[] args) {
+        boolean ok = false;
+        try {
+            int clients = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+            int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+            int persons = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+            List<Op> mix = parseMix(args.length > 3 ? args[3] : DEFAULT_MIX);
+            if (clients < 1 || seconds < 1 || persons < 1) {
+                throw new IllegalArgumentException("clientes, segundos y personas deben ser mayores que 0");
+            }
+            int[] ids = prepare(persons);
+            ok = run(clients, seconds, ids, mix);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Uso: LoadTest [clientes] [segundos] [personas] [mezcla, por defecto " + DEFAULT_MIX + "]");
+            System.exit(2);
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.err.println("La prueba de carga no se completó: " + e.getMessage());
+        } finally {
+            Db.shutdown();
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    static List<Op> parseMix(String text) {
+        List<Op> mix = new ArrayList<>();
+        for (String part : text.split("\\s*,\\s*")) {
+            String[] kv = part.split("\\s*=\\s*");
+            if (kv.length != 2 || !List.of(OPERATIONS).contains(kv[0])) {
+                throw new IllegalArgumentException("Operación inválida en la mezcla: " + part
+                        + " (válidas: " + String.join(", ", OPERATIONS) + ")");
+            }
+            int weight = Integer.parseInt(kv[1]);
+            if (weight > 0) {
+                mix.add(new Op(kv[0], weight));
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("La mezcla no tiene ninguna operación con peso mayor que 0");
+        }
+        return mix;
+    }
+
+    /** Completa la agenda hasta {@code persons} personas y devuelve sus ids. */
+    private static int[] prepare(int persons) throws SQLException {
+        PersonDao dao = new PersonDao();
+        int existing = dao.count(null);
+        if (existing < persons) {
+            List<Person> rows = new ArrayList<>(persons - existing);
+            for (int i = existing; i < persons; i++) {
+                rows.add(new Person(0, NOMBRES[i % NOMBRES.length] + " Carga " + i, "Calle " + i));
+            }
+            System.out.println("Añadidas " + dao.saveAll(rows).getSucceeded() + " personas de prueba");
+        }
+        try (Stream<Contact> contacts = dao.stream(null)) {
+            return contacts.mapToInt(Contact::getId).toArray();
+        }
+    }
+
+    private static boolean run(int clients, int seconds, int[] ids, List<Op> mix) throws Exception {
+        ConnectionPool pool = Db.pool();
+        int totalWeight = mix.stream().mapToInt(op -> op.weight).sum();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(clients);
+        System.out.println(clients + " clientes durante " + seconds + " s sobre " + ids.length + " personas, mezcla " + describe(mix));
+        // Hilos de plataforma: con JDK 17 no hay hilos virtuales. Cada uno es un cliente independiente
+        for (int c = 0; c < clients; c++) {
+            Thread t = new Thread(() -> {
+                try {
+                    client(new PersonDao(), ids, mix, totalWeight, deadline);
+                } finally {
+                    done.countDown();
+                }
+            }, "agenda-carga-" + c);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        long start = System.nanoTime();
+        long lastOps = 0;
+        int peakActive = 0;
+        int peakWaiting = 0;
+        for (int second = 1; !done.await(1, TimeUnit.SECONDS); second++) {
+            long ops = mix.stream().mapToLong(op -> op.latency.count()).sum();
+            int active = pool.getActiveConnections();
+            int waiting = pool.getThreadsAwaitingConnection();
+            peakActive = Math.max(peakActive, active);
+            peakWaiting = Math.max(peakWaiting, waiting);
+            System.out.printf(Locale.ROOT, "%5d s %9d op/s   conexiones: %d/%d activas, %d libres, %d esperando   fallos: %d%n",
+                    second, ops - lastOps, active, pool.getMaxSize(), pool.getIdleConnections(), waiting,
+                    mix.stream().mapToLong(Op::failures).sum());
+            lastOps = ops;
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long total = mix.stream().mapToLong(op -> op.latency.count()).sum();
+        System.out.printf(Locale.ROOT, "%nResultado: %d operaciones en %.1f s (%.1f op/s)%n", total, elapsed, total / elapsed);
+        System.out.printf(Locale.ROOT, "%-9s %9s %9s %8s %8s %8s %8s %10s %8s %8s %8s %8s%n", "operación", "total", "op/s",
+                "p50 ms", "p95 ms", "p99 ms", "máx ms", "conflicto", "interbl.", "bloqueo", "pool", "otros");
+        for (Op op : mix) {
+            LatencyHistogram h = op.latency;
+            System.out.printf(Locale.ROOT, "%-9s %9d %9.1f %8.2f %8.2f %8.2f %8.2f %10d %8d %8d %8d %8d%n", op.name,
+                    h.count(), h.count() / elapsed, ms(h.percentileNanos(0.50)), ms(h.percentileNanos(0.95)),
+                    ms(h.percentileNanos(0.99)), ms(h.maxNanos()), op.conflicts.sum(), op.deadlocks.sum(),
+                    op.lockTimeouts.sum(), op.poolTimeouts.sum(), op.errors.sum());
+        }
+        System.out.println("Conexiones: como mucho " + peakActive + " de " + pool.getMaxSize()
+                + " en uso y " + peakWaiting + " clientes esperando una");
+        boolean ok = true;
+        for (Op op : mix) {
+            if (op.failures() > 0) {
+                ok = false;
+                if (op.firstError.get() != null) {
+                    System.err.println("Primer error en " + op.name + ": " + op.firstError.get());
+                }
+            }
+        }
+        return ok;
+    }
+
+    private static void client(PersonDao dao, int[] ids, List<Op> mix, int totalWeight, long deadline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < deadline) {
+            Op op = pick(mix, random.nextInt(totalWeight));
+            int id = ids[random.nextInt(ids.length)];
+            long start = System.nanoTime();
+            try {
+                execute(op.name, dao, id, random);
+            } catch (StaleDataException e) {
+                op.conflicts.increment();
+            } catch (SQLException | RuntimeException e) {
+                classify(op, e);
+            }
+            op.latency.record(System.nanoTime() - start);
+        }
+    }
+
+    private static Op pick(List<Op> mix, int ticket) {
+        for (Op op : mix) {
+            ticket -= op.weight;
+            if (ticket < 0) {
+                return op;
+            }
+        }
+        return mix.get(mix.size() - 1);
+    }
+
+    private static void execute(String op, PersonDao dao, int id, ThreadLocalRandom random) throws SQLException {
+        switch (op) {
+            case "buscar":
+                String name = NOMBRES[random.nextInt(NOMBRES.length)];
+                dao.search(random.nextBoolean() ? name : name + " Carga " + random.nextInt(10));
+                break;
+            case "detalle":
+                dao.findContact(id);
+                break;
+            case "guardar":
+                Contact c = dao.findContact(id);
+                if (c != null) {
+                    Person p = Person.of(c);
+                    p.setDireccion("Calle " + random.nextInt(100_000));
+                    try {
+                        dao.update(p);
+                    } catch (StaleDataException e) {
+                        // Como la interfaz: vuelve a leer la persona antes de seguir
+                        dao.reload(new int[]{id});
+                        throw e;
+                    }
+                }
+                break;
+            case "telefono":
+                List<String> phones = dao.getTelefonos(id);
+                if (phones.isEmpty() || phones.size() < 3 && random.nextBoolean()) {
+                    dao.addTelefono(id, String.valueOf(600_000_000 + random.nextInt(100_000_000)));
+                } else {
+                    dao.removeTelefono(id, phones.get(random.nextInt(phones.size())));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(op);
+        }
+    }
+
+    private static void classify(Op op, Exception e) {
+        SQLException sql = null;
+        for (Throwable t = e; t != null && sql == null; t = t.getCause()) {
+            if (t instanceof SQLException) {
+                sql = (SQLException) t;
+            }
+        }
+        String state = sql != null && sql.getSQLState() != null ? sql.getSQLState() : "";
+        int code = sql != null ? sql.getErrorCode() : 0;
+        // 40001/1213: interbloqueo (H2 y MariaDB); 50200/1205: espera de bloqueo agotada
+        if (state.equals("40001") || state.equals("40P01") || code == 1213) {
+            op.deadlocks.increment();
+        } else if (code == 50200 || code == 1205) {
+            op.lockTimeouts.increment();
+        } else if (sql instanceof SQLTimeoutException) {
+            op.poolTimeouts.increment();
+        } else {
+            op.errors.increment();
+        }
+        op.firstError.compareAndSet(null, e.toString());
+    }
+
+    private static String describe(List<Op> mix) {
+        StringBuilder sb = new StringBuilder();
+        for (Op op : mix) {
+            sb.append(sb.length() > 0 ? "," : "").append(op.name).append('=').append(op.weight);
+        }
+        return sb.toString();
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+}
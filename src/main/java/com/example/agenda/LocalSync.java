@@ -0,0 +1,839 @@
+package com.example.agenda;
+
+import com.example.agenda.dao.ChangeLog;
+import com.example.agenda.dao.PersonDao;
+import com.example.agenda.metrics.Metrics;
+import com.example.agenda.model.Contact;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Mantiene la copia local (H2 en fichero, {@code db.local.url}) sincronizada con el servidor.
+ * La aplicación lee y escribe sólo en la copia local; las escrituras quedan anotadas en su tabla
+ * {@code Cambios}, que hace de bandeja de salida persistente. Un hilo en segundo plano:
+ * <ol>
+ * <li>envía al servidor el estado actual de cada persona con cambios pendientes, por lotes;</li>
+ * <li>trae los cambios de los demás clientes leyendo los {@code Cambios} del servidor.</li>
+ * </ol>
+ * Si el servidor no responde, reintenta con una espera que se duplica hasta {@code db.local.retryMaxMs}.
+ * <p>
+ * Conflictos: si la persona cambió en el servidor desde la última sincronización, gana el servidor; los
+ * datos locales descartados quedan en la tabla local {@code Conflictos} y se avisa a la interfaz. Las
+ * personas creadas sin conexión tienen ids desde {@link #LOCAL_ID_BASE} y, al enviarlas, pasan a tener
+ * el id que les da el servidor.
+ * <p>
+ * Cada hora se borran de las dos tablas {@code Cambios} las filas de más de {@code sync.retentionDays}
+ * días; en la local, sólo las ya enviadas. Si al recibir faltan cambios porque se podaron en el
+ * servidor se vuelve a copiar toda la agenda, como la primera vez. Los ids sin confirmar se esperan
+ * durante {@code sync.gapTimeoutMs} (como mucho {@link #MAX_GAPS}) y después se dan por vacíos.
+ */
+final class LocalSync implements AutoCloseable {
+    static final int LOCAL_ID_BASE = 1_000_000_000;
+    /** Origen de las filas de {@code Cambios} locales que vienen del servidor (no se reenvían). */
+    static final String REMOTE_ORIGIN = "servidor";
+    static final int MAX_GAPS = 100_000;
+    static final long PRUNE_INTERVAL_MS = TimeUnit.HOURS.toMillis(1);
+
+    @FunctionalInterface
+    interface PoolSource {
+        ConnectionPool get() throws SQLException;
+    }
+
+    /** Resultado de una ronda de {@link #syncOnce()}. */
+    static final class Round {
+        final int pushed;
+        final int pulled;
+        final int conflicts;
+        final int pending;
+
+        Round(int pushed, int pulled, int conflicts, int pending) {
+            this.pushed = pushed;
+            this.pulled = pulled;
+            this.conflicts = conflicts;
+            this.pending = pending;
+        }
+
+        @Override
+        public String toString() {
+            return "enviadas=" + pushed + ", recibidas=" + pulled + ", conflictos=" + conflicts + ", pendientes=" + pending;
+        }
+    }
+
+    private final String name;
+    private final ConnectionPool local;
+    private final PoolSource remote;
+    private final int batchSize;
+    private final long syncMs;
+    private final long flushDelayMs;
+    private final long retryMaxMs;
+    private final long gapTimeoutMs;
+    private final long retentionMs;
+    private long lastPrune;
+    private final ScheduledExecutorService executor;
+    private ScheduledFuture<?> next;
+    private int failures;
+    // Hubo una escritura local durante la ronda en curso
+    private boolean dirty;
+    // Recepción: último id leído del servidor y huecos por debajo (id -> cuándo se vio) aún sin confirmar
+    private long pulledMax = -1;
+    private final TreeMap<Long, Long> gaps = new TreeMap<>();
+    private int conflictCount;
+    private String origin;
+
+    private volatile boolean remoteUp;
+    private volatile int pending;
+    private volatile long conflictsTotal;
+    private final ConcurrentLinkedQueue<String> newConflicts = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean reloadRequested = new AtomicBoolean();
+
+    LocalSync(String name, ConnectionPool local, PoolSource remote, int batchSize, long syncMs,
+              long flushDelayMs, long retryMaxMs, long gapTimeoutMs, long retentionMs) throws SQLException {
+        this.name = name;
+        this.local = local;
+        this.remote = remote;
+        this.batchSize = batchSize;
+        this.syncMs = syncMs;
+        this.flushDelayMs = flushDelayMs;
+        this.retryMaxMs = retryMaxMs;
+        this.gapTimeoutMs = gapTimeoutMs;
+        this.retentionMs = retentionMs;
+        init();
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "agenda-local-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        Metrics.gauge("local." + name, out -> {
+            String label = "store=\"" + name + "\"";
+            out.append("# TYPE agenda_local_remote_up gauge\n");
+            Metrics.sample(out, "agenda_local_remote_up", label, remoteUp ? 1 : 0);
+            out.append("# TYPE agenda_local_outbox_pending gauge\n");
+            Metrics.sample(out, "agenda_local_outbox_pending", label, pending);
+            out.append("# TYPE agenda_local_conflicts_total counter\n");
+            Metrics.sample(out, "agenda_local_conflicts_total", label, conflictsTotal);
+        });
+    }
+
+    void start() {
+        reschedule(0);
+    }
+
+    /** Tras una escritura local: envía pronto, salvo que se esté esperando para reintentar. */
+    void requestFlush() {
+        synchronized (executor) {
+            dirty = true;
+            if (failures == 0) {
+                reschedule(flushDelayMs);
+            }
+        }
+    }
+
+    boolean isRemoteUp() {
+        return remoteUp;
+    }
+
+    /** Cambios locales que aún no se han enviado (según la última ronda). */
+    int getPending() {
+        return pending;
+    }
+
+    /** Conflictos detectados desde la última llamada, para mostrarlos. */
+    List<String> drainConflicts() {
+        List<String> list = new ArrayList<>();
+        for (String c; (c = newConflicts.poll()) != null; ) {
+            list.add(c);
+        }
+        return list;
+    }
+
+    /** {@code true} una vez después de copiar la agenda del servidor: la interfaz debe releer la tabla. */
+    boolean takeReloadRequest() {
+        return reloadRequested.getAndSet(false);
+    }
+
+    private void reschedule(long delayMs) {
+        synchronized (executor) {
+            if (executor.isShutdown()) {
+                return;
+            }
+            if (next != null && !next.isDone()) {
+                if (next.getDelay(TimeUnit.MILLISECONDS) <= delayMs) {
+                    return;
+                }
+                next.cancel(false);
+            }
+            next = executor.schedule(this::runRound, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void runRound() {
+        synchronized (executor) {
+            dirty = false;
+        }
+        long delay;
+        try {
+            syncOnce();
+            synchronized (executor) {
+                failures = 0;
+                delay = dirty ? flushDelayMs : syncMs;
+            }
+        } catch (SQLException | RuntimeException e) {
+            synchronized (executor) {
+                if (failures++ == 0) {
+                    System.err.println("Sin conexión con el servidor (" + name + "): " + e.getMessage()
+                            + ". Los cambios se guardan en local y se enviarán al reconectar.");
+                }
+                delay = Math.min(retryMaxMs, syncMs << Math.min(failures, 16));
+            }
+        }
+        synchronized (executor) {
+            next = null;
+        }
+        reschedule(delay);
+    }
+
+    /** Una ronda completa: envía lo pendiente y trae los cambios del servidor. */
+    synchronized Round syncOnce() throws SQLException {
+        return Metrics.measure("sync.local", name, r -> r.pushed + r.pulled, () -> {
+            try (Connection loc = local.getConnection()) {
+                loc.setAutoCommit(false);
+                try (Connection rem = remote.get().getConnection()) {
+                    rem.setAutoCommit(false);
+                    remoteUp = true;
+                    int before = conflictCount;
+                    int pushed = push(loc, rem);
+                    int pulled = pull(loc, rem);
+                    pruneIfDue(loc, rem);
+                    pending = countPending(loc);
+                    return new Round(pushed, pulled, conflictCount - before, pending);
+                } catch (SQLException e) {
+                    remoteUp = false;
+                    pending = countPending(loc);
+                    throw e;
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        synchronized (executor) {
+            executor.shutdownNow();
+        }
+        Metrics.removeGauge("local." + name);
+    }
+
+    // ---------------------------------------------------------------- tablas locales
+
+    private void init() throws SQLException {
+        try (Connection con = local.getConnection(); Statement st = con.createStatement()) {
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS SincroEstado ("
+                    + "clave VARCHAR(30) PRIMARY KEY, valor VARCHAR(100) NOT NULL)");
+            // Versión que tenía cada persona en el servidor en la última sincronización
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS SincroBase ("
+                    + "personaId INT PRIMARY KEY, version INT NOT NULL)");
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS Conflictos ("
+                    + "id BIGINT AUTO_INCREMENT PRIMARY KEY, personaId INT NOT NULL, "
+                    + "motivo VARCHAR(200) NOT NULL, datosLocales VARCHAR(4000), "
+                    + "fecha TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            // Las altas sin conexión no deben coincidir con ids del servidor
+            try (ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(id), 0) FROM Personas WHERE id >= " + LOCAL_ID_BASE)) {
+                rs.next();
+                st.executeUpdate("ALTER TABLE Personas ALTER COLUMN id RESTART WITH "
+                        + Math.max(LOCAL_ID_BASE, rs.getLong(1) + 1));
+            }
+            origin = state(con, "origen");
+            if (origin == null) {
+                origin = ChangeLog.newOrigin();
+                setState(con, "origen", origin);
+            }
+            pending = countPending(con);
+        }
+    }
+
+    private static String state(Connection con, String key) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SELECT valor FROM SincroEstado WHERE clave=?")) {
+            ps.setString(1, key);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    // value == null borra la clave
+    private static void setState(Connection con, String key, Object value) throws SQLException {
+        String sql = value != null
+                ? "MERGE INTO SincroEstado (clave, valor) KEY (clave) VALUES (?, ?)"
+                : "DELETE FROM SincroEstado WHERE clave=?";
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setString(1, key);
+            if (value != null) ps.setString(2, String.valueOf(value));
+            ps.executeUpdate();
+        }
+    }
+
+    private static Integer base(Connection con, int personId) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SELECT version FROM SincroBase WHERE personaId=?")) {
+            ps.setInt(1, personId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
+    private static void setBase(Connection con, int personId, Integer version) throws SQLException {
+        String sql = version != null
+                ? "MERGE INTO SincroBase (personaId, version) KEY (personaId) VALUES (?, ?)"
+                : "DELETE FROM SincroBase WHERE personaId=?";
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setInt(1, personId);
+            if (version != null) ps.setInt(2, version);
+            ps.executeUpdate();
+        }
+    }
+
+    private static long sent(Connection con) throws SQLException {
+        String value = state(con, "enviado");
+        return value != null ? Long.parseLong(value) : 0;
+    }
+
+    private static int countPending(Connection con) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(
+                "SELECT COUNT(DISTINCT personaId) FROM Cambios WHERE id > ? AND origen <> ?")) {
+            ps.setLong(1, sent(con));
+            ps.setString(2, REMOTE_ORIGIN);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    private void conflict(Connection loc, int personId, String motivo, Contact mine) throws SQLException {
+        try (PreparedStatement ps = loc.prepareStatement(
+                "INSERT INTO Conflictos (personaId, motivo, datosLocales) VALUES (?, ?, ?)")) {
+            ps.setInt(1, personId);
+            ps.setString(2, motivo);
+            ps.setString(3, mine != null ? truncate(mine.toString(), 4000) : null);
+            ps.executeUpdate();
+        }
+        conflictCount++;
+        conflictsTotal++;
+        String message = (mine != null ? mine.getNombre() : "Persona " + personId) + ": " + motivo;
+        newConflicts.add(message);
+        System.err.println("Conflicto de sincronización (" + name + ") " + message);
+    }
+
+    private static String truncate(String s, int max) {
+        return s.length() <= max ? s : s.substring(0, max);
+    }
+
+    // ---------------------------------------------------------------- envío
+
+    /** Envía el estado actual de las personas con cambios pendientes; devuelve cuántas. */
+    private int push(Connection loc, Connection rem) throws SQLException {
+        long sent = sent(loc);
+        // Primer cambio pendiente de cada persona: varias ediciones seguidas se envían una sola vez
+        Map<Integer, Long> first = new LinkedHashMap<>();
+        long last = sent;
+        try (PreparedStatement ps = loc.prepareStatement(
+                "SELECT id, personaId FROM Cambios WHERE id > ? AND origen <> ? ORDER BY id LIMIT ?")) {
+            ps.setLong(1, sent);
+            ps.setString(2, REMOTE_ORIGIN);
+            ps.setInt(3, batchSize);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    last = rs.getLong(1);
+                    first.putIfAbsent(rs.getInt(2), last);
+                }
+            }
+        }
+        loc.commit();
+        int pushed = 0;
+        for (Map.Entry<Integer, Long> e : first.entrySet()) {
+            try {
+                if (pushPerson(loc, rem, e.getKey())) pushed++;
+            } catch (SQLException error) {
+                rollbackQuietly(loc, rem);
+                if (!rejected(error)) {
+                    // Sin conexión: lo que queda se envía en la próxima ronda
+                    setState(loc, "enviado", e.getValue() - 1);
+                    loc.commit();
+                    throw error;
+                }
+                conflict(loc, e.getKey(), "El servidor rechazó el cambio: " + error.getMessage(), loadLocal(loc, e.getKey()));
+                loc.commit();
+            }
+        }
+        setState(loc, "enviado", last);
+        loc.commit();
+        return pushed;
+    }
+
+    // Errores del propio dato: reintentar no sirve
+    private static boolean rejected(SQLException e) {
+        return e instanceof SQLIntegrityConstraintViolationException || e instanceof SQLDataException;
+    }
+
+    private boolean pushPerson(Connection loc, Connection rem, int id) throws SQLException {
+        Contact mine = loadLocal(loc, id);
+        Integer base = base(loc, id);
+        if (base == null) {
+            // Alta de una ronda anterior que quizá llegó al servidor sin terminar de anotarse aquí
+            String pendingKey = "alta." + id;
+            String pendingId = state(loc, pendingKey);
+            Integer inserted = pendingId != null && insertedBy(rem, Integer.parseInt(pendingId)) ? Integer.valueOf(pendingId) : null;
+            if (mine == null) {
+                if (inserted != null) {
+                    try (PreparedStatement ps = rem.prepareStatement("DELETE FROM Personas WHERE id=?")) {
+                        ps.setInt(1, inserted);
+                        ps.executeUpdate();
+                    }
+                    ChangeLog.record(rem, origin, inserted, 0, true);
+                    rem.commit();
+                }
+                if (pendingId != null) {
+                    setState(loc, pendingKey, null);
+                    loc.commit();
+                }
+                return inserted != null; // Si no, creada y borrada sin llegar a enviarse
+            }
+            int remoteId;
+            if (inserted != null) {
+                remoteId = inserted;
+                rem.rollback();
+            } else {
+                remoteId = insertRemote(rem, mine);
+                // Antes de confirmar en el servidor: si después falla algo aquí, la próxima ronda no la
+                // vuelve a insertar
+                setState(loc, pendingKey, remoteId);
+                loc.commit();
+                rem.commit();
+            }
+            if (remoteId != id) {
+                // Primero la persona: si se está guardando otra edición, espera a que termine
+                try (PreparedStatement ps = loc.prepareStatement("UPDATE Personas SET id=? WHERE id=?")) {
+                    ps.setInt(1, remoteId);
+                    ps.setInt(2, id);
+                    ps.executeUpdate();
+                }
+                // Todas las filas pendientes, no sólo las del lote: las escritas desde que se leyó se
+                // envían en la próxima ronda con el id nuevo
+                try (PreparedStatement ps = loc.prepareStatement("UPDATE Cambios SET personaId=? WHERE personaId=? AND origen <> ?")) {
+                    ps.setInt(1, remoteId);
+                    ps.setInt(2, id);
+                    ps.setString(3, REMOTE_ORIGIN);
+                    ps.executeUpdate();
+                }
+                // La interfaz ve la fila con el id local desaparecer y aparecer con el del servidor
+                ChangeLog.record(loc, REMOTE_ORIGIN, id, mine.getVersion(), true);
+                ChangeLog.record(loc, REMOTE_ORIGIN, remoteId, mine.getVersion(), false);
+            }
+            if (inserted != null) {
+                // En el servidor están los datos del primer intento: lo editado desde entonces se envía en la próxima ronda
+                ChangeLog.record(loc, origin, remoteId, mine.getVersion(), false);
+            }
+            setBase(loc, remoteId, 0);
+            setState(loc, pendingKey, null);
+            loc.commit();
+            return true;
+        }
+
+        Contact theirs = loadRemoteForUpdate(rem, id);
+        if (theirs == null) {
+            rem.rollback();
+            if (mine != null) {
+                conflict(loc, id, "Eliminada en el servidor; se descartan los cambios locales", mine);
+                applyLocal(loc, id, null);
+            }
+            setBase(loc, id, null);
+            loc.commit();
+            return false;
+        }
+        if (theirs.getVersion() != base) {
+            rem.rollback();
+            conflict(loc, id, mine != null
+                    ? "Modificada en el servidor; se conservan los datos del servidor"
+                    : "Modificada en el servidor; no se elimina", mine);
+            applyLocal(loc, id, theirs);
+            setBase(loc, id, theirs.getVersion());
+            loc.commit();
+            return false;
+        }
+        if (mine == null) {
+            try (PreparedStatement ps = rem.prepareStatement("DELETE FROM Personas WHERE id=?")) {
+                ps.setInt(1, id);
+                ps.executeUpdate();
+            }
+            ChangeLog.record(rem, origin, id, base, true);
+            rem.commit();
+            setBase(loc, id, null);
+            loc.commit();
+            return true;
+        }
+        if (sameData(mine, theirs)) {
+            rem.rollback();
+            return false;
+        }
+        int version = base + 1;
+        try (PreparedStatement ps = rem.prepareStatement("UPDATE Personas SET nombre=?, direccion=?, version=? WHERE id=?")) {
+            ps.setString(1, mine.getNombre());
+            ps.setString(2, mine.getDireccion());
+            ps.setInt(3, version);
+            ps.setInt(4, id);
+            ps.executeUpdate();
+        }
+        PersonDao.writePhones(rem, id, mine.getTelefonos());
+        ChangeLog.record(rem, origin, id, version, false);
+        rem.commit();
+        setBase(loc, id, version);
+        loc.commit();
+        return true;
+    }
+
+    private int insertRemote(Connection rem, Contact c) throws SQLException {
+        int remoteId;
+        try (PreparedStatement ps = rem.prepareStatement("INSERT INTO Personas (nombre, direccion) VALUES (?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            ps.setString(1, c.getNombre());
+            ps.setString(2, c.getDireccion());
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("El servidor no devolvió el id de la persona nueva");
+                }
+                remoteId = keys.getInt(1);
+            }
+        }
+        PersonDao.writePhones(rem, remoteId, c.getTelefonos());
+        ChangeLog.record(rem, origin, remoteId, 0, false);
+        return remoteId;
+    }
+
+    // La anotación del alta en Cambios del servidor confirma que la persona remoteId la insertó este cliente
+    private boolean insertedBy(Connection rem, int remoteId) throws SQLException {
+        try (PreparedStatement ps = rem.prepareStatement(
+                "SELECT 1 FROM Cambios WHERE personaId=? AND origen=? AND borrado=FALSE LIMIT 1")) {
+            ps.setInt(1, remoteId);
+            ps.setString(2, origin);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static boolean sameData(Contact a, Contact b) {
+        return Objects.equals(a.getNombre(), b.getNombre()) && Objects.equals(a.getDireccion(), b.getDireccion())
+                && a.getTelefonos().equals(b.getTelefonos());
+    }
+
+    // ---------------------------------------------------------------- recepción
+
+    /** Trae los cambios de otros clientes; devuelve cuántas personas se actualizaron en local. */
+    private int pull(Connection loc, Connection rem) throws SQLException {
+        String received = state(loc, "recibido");
+        if (received == null) {
+            return snapshot(loc, rem);
+        }
+        // Un id sin confirmar deja un hueco que se vuelve a consultar durante gapTimeoutMs. En disco se
+        // guarda el id anterior al hueco más antiguo: tras reiniciar se releen las filas posteriores,
+        // sin efecto si la versión ya está aplicada
+        pulledMax = Math.max(pulledMax, Long.parseLong(received));
+        long now = System.currentTimeMillis();
+        gaps.values().removeIf(seen -> now - seen > gapTimeoutMs);
+        Map<Integer, Boolean> touched = new LinkedHashMap<>();
+        Map<Long, Long> newGaps = new TreeMap<>();
+        Set<Long> filled = new HashSet<>();
+        long next = pulledMax;
+        long firstNew = -1;
+        boolean capped = false;
+        try (PreparedStatement ps = rem.prepareStatement(
+                "SELECT id, personaId, origen FROM Cambios WHERE id > ? ORDER BY id LIMIT ?")) {
+            ps.setLong(1, pulledMax);
+            ps.setInt(2, batchSize);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    long id = rs.getLong(1);
+                    if (firstNew < 0) firstNew = id;
+                    for (long g = next + 1; g < id; g++) {
+                        if (gaps.size() + newGaps.size() >= MAX_GAPS) {
+                            capped = true;
+                            break;
+                        }
+                        newGaps.put(g, now);
+                    }
+                    next = id;
+                    if (!origin.equals(rs.getString(3))) touched.put(rs.getInt(2), Boolean.TRUE);
+                }
+            }
+        }
+        // Sólo se podan filas de más de retentionMs: si se recibió hace menos, un hueco son ids deshechos
+        String receivedAt = state(loc, "recibidoEn");
+        boolean mayHaveMissedPrune = retentionMs > 0
+                && now - (receivedAt != null ? Long.parseLong(receivedAt) : 0) > retentionMs / 2;
+        if (firstNew > pulledMax + 1 && mayHaveMissedPrune && ChangeLog.prunedAfter(rem, pulledMax)) {
+            rem.commit();
+            System.err.println("Faltan cambios del servidor (" + name + ") tras el " + pulledMax
+                    + ": ya se borraron (sync.retentionDays). Se vuelve a copiar toda la agenda.");
+            gaps.clear();
+            pulledMax = -1;
+            return snapshot(loc, rem);
+        }
+        if (capped) {
+            System.err.println("Más de " + MAX_GAPS + " cambios del servidor sin confirmar (" + name
+                    + "); los que falten hasta el " + next + " se dan por vacíos");
+        }
+        List<Long> open = new ArrayList<>(gaps.keySet());
+        for (int from = 0; from < open.size(); from += batchSize) {
+            List<Long> chunk = open.subList(from, Math.min(from + batchSize, open.size()));
+            try (PreparedStatement ps = rem.prepareStatement("SELECT id, personaId, origen FROM Cambios WHERE id IN ("
+                    + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")")) {
+                int i = 1;
+                for (long gap : chunk) ps.setLong(i++, gap);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        filled.add(rs.getLong(1));
+                        if (!origin.equals(rs.getString(3))) touched.put(rs.getInt(2), Boolean.TRUE);
+                    }
+                }
+            }
+        }
+        rem.commit();
+
+        int pulled = 0;
+        if (!touched.isEmpty()) {
+            Map<Integer, Contact> theirs = load(rem, touched.keySet(), false);
+            rem.commit();
+            long sent = sent(loc);
+            for (int id : touched.keySet()) {
+                // Con cambios locales pendientes decide el envío (y avisa del conflicto)
+                if (hasPending(loc, id, sent)) continue;
+                Contact c = theirs.get(id);
+                Integer base = base(loc, id);
+                if (c == null ? base == null && loadLocal(loc, id) == null : base != null && base == c.getVersion()) {
+                    continue;
+                }
+                applyLocal(loc, id, c);
+                setBase(loc, id, c != null ? c.getVersion() : null);
+                pulled++;
+            }
+        }
+        pulledMax = next;
+        gaps.keySet().removeAll(filled);
+        gaps.putAll(newGaps);
+        setState(loc, "recibido", gaps.isEmpty() ? pulledMax : gaps.firstKey() - 1);
+        setState(loc, "recibidoEn", now);
+        loc.commit();
+        return pulled;
+    }
+
+    /**
+     * Copia toda la agenda del servidor: la primera vez o cuando faltan cambios por recibir. Las personas
+     * con cambios pendientes no se tocan (decide el envío) y las que ya no están en el servidor se borran.
+     */
+    private int snapshot(Connection loc, Connection rem) throws SQLException {
+        long cursor = ChangeLog.lastId(rem);
+        Set<Integer> pendingIds = new HashSet<>();
+        try (PreparedStatement ps = loc.prepareStatement(
+                "SELECT DISTINCT personaId FROM Cambios WHERE id > ? AND origen <> ?")) {
+            ps.setLong(1, sent(loc));
+            ps.setString(2, REMOTE_ORIGIN);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) pendingIds.add(rs.getInt(1));
+            }
+        }
+        Set<Integer> seen = new HashSet<>();
+        int copied = 0;
+        String sql = "SELECT p.id, p.nombre, p.direccion, p.version, t.telefono FROM Personas p "
+                   + "LEFT JOIN Telefonos t ON t.personaId = p.id ORDER BY p.id, t.id";
+        try (PreparedStatement ps = rem.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            ps.setFetchSize(Db.getInt("db.fetchSize", 1000));
+            try (ResultSet rs = ps.executeQuery()) {
+                boolean more = rs.next();
+                while (more) {
+                    int id = rs.getInt(1);
+                    String nombre = rs.getString(2);
+                    String direccion = rs.getString(3);
+                    int version = rs.getInt(4);
+                    List<String> phones = new ArrayList<>(2);
+                    do {
+                        String t = rs.getString(5);
+                        if (t != null) phones.add(t);
+                        more = rs.next();
+                    } while (more && rs.getInt(1) == id);
+                    seen.add(id);
+                    if (pendingIds.contains(id)) continue;
+                    writeLocal(loc, new Contact(id, nombre, direccion, phones, version));
+                    setBase(loc, id, version);
+                    if (++copied % 1000 == 0) loc.commit();
+                }
+            }
+        }
+        rem.commit();
+        // Sólo las que ya estuvieron en el servidor: las altas sin enviar no tienen versión base
+        List<Integer> gone = new ArrayList<>();
+        try (Statement st = loc.createStatement();
+             ResultSet rs = st.executeQuery("SELECT personaId FROM SincroBase")) {
+            while (rs.next()) {
+                int id = rs.getInt(1);
+                if (!seen.contains(id) && !pendingIds.contains(id)) gone.add(id);
+            }
+        }
+        for (int id : gone) {
+            try (PreparedStatement ps = loc.prepareStatement("DELETE FROM Personas WHERE id=?")) {
+                ps.setInt(1, id);
+                ps.executeUpdate();
+            }
+            setBase(loc, id, null);
+        }
+        setState(loc, "recibido", cursor);
+        setState(loc, "recibidoEn", System.currentTimeMillis());
+        loc.commit();
+        reloadRequested.set(true);
+        System.out.println("Copia local (" + name + "): " + copied + " personas copiadas del servidor");
+        return copied;
+    }
+
+    // Como mucho una vez por PRUNE_INTERVAL_MS. En local sólo lo ya enviado: el resto es la bandeja de salida
+    private void pruneIfDue(Connection loc, Connection rem) throws SQLException {
+        long now = System.currentTimeMillis();
+        if (retentionMs <= 0 || now - lastPrune < PRUNE_INTERVAL_MS) {
+            return;
+        }
+        lastPrune = now;
+        ChangeLog.prune(rem, retentionMs, Long.MAX_VALUE);
+        rem.commit();
+        ChangeLog.prune(loc, retentionMs, sent(loc) + 1);
+        loc.commit();
+    }
+
+    private static boolean hasPending(Connection loc, int personId, long sent) throws SQLException {
+        try (PreparedStatement ps = loc.prepareStatement(
+                "SELECT 1 FROM Cambios WHERE personaId=? AND id > ? AND origen <> ? LIMIT 1")) {
+            ps.setInt(1, personId);
+            ps.setLong(2, sent);
+            ps.setString(3, REMOTE_ORIGIN);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /** Deja la persona local como {@code c} (o la borra si es {@code null}) y lo anota para la interfaz. */
+    private static void applyLocal(Connection loc, int id, Contact c) throws SQLException {
+        if (c == null) {
+            try (PreparedStatement ps = loc.prepareStatement("DELETE FROM Personas WHERE id=?")) {
+                ps.setInt(1, id);
+                ps.executeUpdate();
+            }
+            ChangeLog.record(loc, REMOTE_ORIGIN, id, 0, true);
+        } else {
+            ChangeLog.record(loc, REMOTE_ORIGIN, id, writeLocal(loc, c), false);
+        }
+    }
+
+    // Devuelve la versión local resultante: sube en cada cambio para el bloqueo optimista de la interfaz
+    private static int writeLocal(Connection loc, Contact c) throws SQLException {
+        int updated;
+        try (PreparedStatement ps = loc.prepareStatement(
+                "UPDATE Personas SET nombre=?, direccion=?, version=version+1 WHERE id=?")) {
+            ps.setString(1, c.getNombre());
+            ps.setString(2, c.getDireccion());
+            ps.setInt(3, c.getId());
+            updated = ps.executeUpdate();
+        }
+        if (updated == 0) {
+            try (PreparedStatement ps = loc.prepareStatement(
+                    "INSERT INTO Personas (id, nombre, direccion) VALUES (?, ?, ?)")) {
+                ps.setInt(1, c.getId());
+                ps.setString(2, c.getNombre());
+                ps.setString(3, c.getDireccion());
+                ps.executeUpdate();
+            }
+        }
+        PersonDao.writePhones(loc, c.getId(), c.getTelefonos());
+        try (PreparedStatement ps = loc.prepareStatement("SELECT version FROM Personas WHERE id=?")) {
+            ps.setInt(1, c.getId());
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- lectura
+
+    private static Contact loadLocal(Connection loc, int id) throws SQLException {
+        return load(loc, List.of(id), false).get(id);
+    }
+
+    private static Contact loadRemoteForUpdate(Connection rem, int id) throws SQLException {
+        return load(rem, List.of(id), true).get(id);
+    }
+
+    private static Map<Integer, Contact> load(Connection con, Collection<Integer> ids, boolean forUpdate)
+            throws SQLException {
+        String in = String.join(",", Collections.nCopies(ids.size(), "?"));
+        Map<Integer, String[]> rows = new LinkedHashMap<>();
+        Map<Integer, Integer> versions = new HashMap<>();
+        try (PreparedStatement ps = con.prepareStatement("SELECT id, nombre, direccion, version FROM Personas WHERE id IN ("
+                + in + ")" + (forUpdate ? " FOR UPDATE" : ""))) {
+            int i = 1;
+            for (int id : ids) ps.setInt(i++, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.put(rs.getInt(1), new String[]{rs.getString(2), rs.getString(3)});
+                    versions.put(rs.getInt(1), rs.getInt(4));
+                }
+            }
+        }
+        Map<Integer, List<String>> phones = new HashMap<>();
+        if (!rows.isEmpty()) {
+            try (PreparedStatement ps = con.prepareStatement("SELECT personaId, telefono FROM Telefonos WHERE personaId IN ("
+                    + String.join(",", Collections.nCopies(rows.size(), "?")) + ") ORDER BY personaId, id")) {
+                int i = 1;
+                for (int id : rows.keySet()) ps.setInt(i++, id);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        phones.computeIfAbsent(rs.getInt(1), k -> new ArrayList<>()).add(rs.getString(2));
+                    }
+                }
+            }
+        }
+        Map<Integer, Contact> result = new HashMap<>();
+        rows.forEach((id, row) -> result.put(id,
+                new Contact(id, row[0], row[1], phones.getOrDefault(id, List.of()), versions.get(id))));
+        return result;
+    }
+
+    private static void rollbackQuietly(Connection... connections) {
+        for (Connection con : connections) {
+            try {
+                con.rollback();
+            } catch (SQLException ignored) {
+                // La conexión está rota; el pool la descartará
+            }
+        }
+    }
+}
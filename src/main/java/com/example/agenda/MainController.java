@@ -1,20 +1,34 @@
 package com.example.agenda;
 
+import com.example.agenda.dao.ChangeFeed;
 import com.example.agenda.dao.PersonDao;
+import com.example.agenda.dao.SearchIndex;
+import com.example.agenda.dao.StaleDataException;
+import com.example.agenda.model.Contact;
 import com.example.agenda.model.Person;
+import com.example.agenda.service.PersonService;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.PauseTransition;
+import javafx.animation.Timeline;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.util.Duration;
 
 import java.net.URL;
-import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 import java.util.ResourceBundle;
+import java.util.concurrent.CompletableFuture;
 
 public class MainController implements Initializable {
+    // Filas a cada lado de la seleccionada cuyos teléfonos se leen de antemano
+    private static final int PREFETCH_ROWS = Db.getInt("tabla.prefetchFilas", 2);
     
     @FXML
     private TextField searchField;
@@ -49,28 +63,51 @@ public class MainController implements Initializable {
     @FXML
     private ListView<String> telefonosList;
     
-    private PersonDao personDao;
-    private ObservableList<Person> personList;
+    private PersonService personService;
+    private PauseTransition searchDebounce;
+    private PagedPersonList personList;
     private ObservableList<String> telefonoList;
     private Person selectedPerson;
+    // Datos de la persona seleccionada tal como se mostraron (la versión es la que se guarda)
+    private Contact shown;
+    private ChangeFeed changeFeed;
+    private Timeline syncTimer;
+    private boolean syncing;
     
+    public MainController() {
+        this(null);
+    }
+
+    /** Con un servicio ya creado (y quizá ya conectando) por {@link App}. */
+    public MainController(PersonService personService) {
+        this.personService = personService;
+    }
+
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
-        personDao = new PersonDao();
-        personList = FXCollections.observableArrayList();
+        if (personService == null) {
+            PersonDao personDao = new PersonDao();
+            personDao.setSearchIndex(new SearchIndex());
+            personService = new PersonService(personDao);
+        }
+        changeFeed = new ChangeFeed(personService.getDao());
         telefonoList = FXCollections.observableArrayList();
+        // Mientras llegan los primeros datos la tabla muestra que está cargando
+        personTable.setPlaceholder(new ProgressIndicator());
         
-        // Configurar las columnas de la tabla
-        colId.setCellValueFactory(new PropertyValueFactory<>("id"));
-        colNombre.setCellValueFactory(new PropertyValueFactory<>("nombre"));
-        colDireccion.setCellValueFactory(new PropertyValueFactory<>("direccion"));
-        colTelefonos.setCellValueFactory(new PropertyValueFactory<>("numTelefonos"));
+        // Configurar las columnas de la tabla (sin reflexión: se llama a la propiedad directamente).
+        // El id no cambia: no hace falta crear su propiedad en cada fila. Las filas de una página que
+        // aún se está cargando son null (PagedPersonList) y se muestran vacías
+        colId.setCellValueFactory(cell -> cell.getValue() == null ? null : new ReadOnlyObjectWrapper<>(cell.getValue().getId()));
+        colNombre.setCellValueFactory(cell -> cell.getValue() == null ? null : cell.getValue().nombreProperty());
+        colDireccion.setCellValueFactory(cell -> cell.getValue() == null ? null : cell.getValue().direccionProperty());
+        colTelefonos.setCellValueFactory(cell -> cell.getValue() == null ? null : cell.getValue().numTelefonosProperty().asObject());
         
         // Configurar la tabla
-        personTable.setItems(personList);
         telefonosList.setItems(telefonoList);
         
-        // Listener para selección en la tabla
+        // Listener para selección en la tabla (con Ctrl/Mayús se pueden marcar varias para borrar)
+        personTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
         personTable.getSelectionModel().selectedItemProperty().addListener(
             (observable, oldValue, newValue) -> {
                 if (newValue != null) {
@@ -79,13 +116,38 @@ public class MainController implements Initializable {
             }
         );
         
+        // Búsqueda mientras se escribe: sólo tras una pausa, no en cada tecla
+        searchDebounce = new PauseTransition(Duration.millis(Db.getInt("search.debounceMs", 250)));
+        searchDebounce.setOnFinished(e -> runSearch());
+        searchField.textProperty().addListener((observable, oldValue, newValue) -> searchDebounce.playFromStart());
+        
+        // Cambios de otros usuarios: cada sync.pollMs se leen sólo los nuevos (0 = desactivado)
+        int pollMs = Db.getInt("sync.pollMs", 5000);
+        if (pollMs > 0) {
+            syncTimer = new Timeline(new KeyFrame(Duration.millis(pollMs), e -> pollChanges()));
+            syncTimer.setCycleCount(Animation.INDEFINITE);
+            syncTimer.play();
+        }
+        
         // Cargar datos iniciales
         loadAllPersons();
+        PersonService.onFx(personService.buildSearchIndex(), done -> { },
+                e -> System.err.println("No se pudo cargar el índice de búsqueda: " + e.getMessage()));
     }
     
     @FXML
     private void onSearch() {
+        // Enter: buscar ya, sin esperar a la pausa
+        searchDebounce.stop();
+        runSearch();
+    }
+    
+    private void runSearch() {
         String searchText = searchField.getText().trim();
+        String current = personList != null && personList.isSearchResult() ? personList.getQuery() : "";
+        if (searchText.equals(current)) {
+            return;
+        }
         if (searchText.isEmpty()) {
             loadAllPersons();
         } else {
@@ -102,42 +164,68 @@ public class MainController implements Initializable {
     
     @FXML
     private void onSave() {
-        try {
-            String nombre = nombreField.getText().trim();
-            String direccion = direccionField.getText().trim();
-            
-            if (nombre.isEmpty()) {
-                showError("Error de validación", "El nombre es obligatorio");
-                return;
-            }
-            
-            if (selectedPerson == null) {
-                // Crear nueva persona
-                Person newPerson = new Person();
-                newPerson.setNombre(nombre);
-                newPerson.setDireccion(direccion);
-                
-                personDao.save(newPerson);
-                showInfo("Éxito", "Persona guardada correctamente");
+        String nombre = nombreField.getText().trim();
+        String direccion = direccionField.getText().trim();
+        
+        if (nombre.isEmpty()) {
+            showError("Error de validación", "El nombre es obligatorio");
+            return;
+        }
+        
+        Person person;
+        String message;
+        Person row = selectedPerson;
+        boolean isNew = row == null;
+        if (isNew) {
+            // Crear nueva persona
+            person = new Person();
+            message = "Persona guardada correctamente";
+        } else {
+            // Actualizar persona existente, con la versión que se mostró. Se guarda una copia: la fila
+            // de la tabla sólo cambia (en el hilo de JavaFX) cuando el guardado ha terminado bien
+            person = row.copy();
+            person.setVersion(shown.getVersion());
+            message = "Persona actualizada correctamente";
+        }
+        person.setNombre(nombre);
+        person.setDireccion(direccion);
+        
+        PersonService.onFx(personService.save(person), saved -> {
+            showInfo("Éxito", message);
+            // Sólo se toca la fila afectada; una búsqueda se repite por si la persona nueva coincide
+            if (!isNew) {
+                if (personList == null || !personList.refresh(saved)) {
+                    row.setNombre(saved.getNombre());
+                    row.setDireccion(saved.getDireccion());
+                    row.setVersion(saved.getVersion());
+                }
+            } else if (personList != null && !personList.isSearchResult()) {
+                personList.append(saved);
             } else {
-                // Actualizar persona existente
-                selectedPerson.setNombre(nombre);
-                selectedPerson.setDireccion(direccion);
-                
-                personDao.update(selectedPerson);
-                showInfo("Éxito", "Persona actualizada correctamente");
+                reloadPersons();
             }
-            
-            loadAllPersons();
             clearFields();
-            
-        } catch (SQLException e) {
-            showError("Error al guardar", "No se pudo guardar la persona: " + e.getMessage());
-        }
+        }, e -> {
+            if (e instanceof StaleDataException) {
+                showError("Conflicto al guardar", e.getMessage()
+                        + ". Se muestran sus datos actuales; repite el cambio si sigue siendo necesario.");
+                reloadPerson(person.getId());
+            } else {
+                showError("Error al guardar", "No se pudo guardar la persona: " + e.getMessage());
+            }
+        });
     }
     
     @FXML
     private void onDelete() {
+        int[] ids = personTable.getSelectionModel().getSelectedItems().stream()
+                .filter(Objects::nonNull)
+                .mapToInt(Person::getId)
+                .toArray();
+        if (ids.length > 1) {
+            deleteSelected(ids);
+            return;
+        }
         if (selectedPerson == null) {
             showError("Error", "Por favor selecciona una persona para eliminar");
             return;
@@ -149,14 +237,48 @@ public class MainController implements Initializable {
         alert.setContentText("Se eliminará la persona: " + selectedPerson.getNombre());
         
         if (alert.showAndWait().orElse(ButtonType.CANCEL) == ButtonType.OK) {
-            try {
-                personDao.delete(selectedPerson.getId());
+            int id = selectedPerson.getId();
+            PersonService.onFx(personService.delete(Person.of(shown)), done -> {
                 showInfo("Éxito", "Persona eliminada correctamente");
-                loadAllPersons();
+                if (personList != null) {
+                    personList.removeById(id);
+                }
                 clearFields();
-            } catch (SQLException e) {
-                showError("Error al eliminar", "No se pudo eliminar la persona: " + e.getMessage());
-            }
+            }, e -> {
+                if (e instanceof StaleDataException) {
+                    showError("Conflicto al eliminar", e.getMessage() + ". Revisa sus datos actuales antes de eliminarla.");
+                    reloadPerson(id);
+                } else {
+                    showError("Error al eliminar", "No se pudo eliminar la persona: " + e.getMessage());
+                }
+            });
+        }
+    }
+    
+    private void deleteSelected(int[] ids) {
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Confirmar eliminación");
+        alert.setHeaderText("¿Estás seguro?");
+        alert.setContentText("Se eliminarán " + ids.length + " personas seleccionadas");
+        
+        if (alert.showAndWait().orElse(ButtonType.CANCEL) == ButtonType.OK) {
+            PersonService.onFx(personService.deleteAll(ids), result -> {
+                if (personList != null) {
+                    for (int id : result.getIds()) {
+                        personList.removeById(id);
+                    }
+                }
+                clearFields();
+                if (result.isComplete()) {
+                    showInfo("Éxito", result.getSucceeded() + " personas eliminadas correctamente");
+                } else {
+                    StringBuilder detail = new StringBuilder();
+                    result.getFailures().forEach(f -> detail.append("\n- id ").append(f.getPersonId())
+                            .append(": ").append(f.getMessage()));
+                    showError("Eliminación incompleta", "Se eliminaron " + result.getSucceeded() + " de "
+                            + result.getRequested() + " personas. No se pudieron eliminar:" + detail);
+                }
+            }, e -> showError("Error al eliminar", "No se pudieron eliminar las personas: " + e.getMessage()));
         }
     }
     
@@ -170,15 +292,12 @@ public class MainController implements Initializable {
     private void onAddPhone() {
         String telefono = telefonoField.getText().trim();
         if (!telefono.isEmpty() && selectedPerson != null) {
-            try {
-                personDao.addTelefono(selectedPerson.getId(), telefono);
+            Person person = selectedPerson;
+            PersonService.onFx(personService.addTelefono(person.getId(), telefono), updated -> {
                 telefonoField.clear();
-                loadPersonDetails(selectedPerson); // Recargar teléfonos
-                loadAllPersons(); // Actualizar contador en la tabla
+                showPhones(person, updated); // Sólo se actualiza esta fila, sin recargar la tabla
                 showInfo("Éxito", "Teléfono agregado correctamente");
-            } catch (SQLException e) {
-                showError("Error", "No se pudo agregar el teléfono: " + e.getMessage());
-            }
+            }, e -> showError("Error", "No se pudo agregar el teléfono: " + e.getMessage()));
         } else if (selectedPerson == null) {
             showError("Error", "Primero selecciona o guarda una persona");
         }
@@ -194,51 +313,233 @@ public class MainController implements Initializable {
             alert.setContentText("Se eliminará el teléfono: " + selectedTelefono);
             
             if (alert.showAndWait().orElse(ButtonType.CANCEL) == ButtonType.OK) {
-                try {
-                    personDao.removeTelefono(selectedPerson.getId(), selectedTelefono);
-                    loadPersonDetails(selectedPerson); // Recargar teléfonos
-                    loadAllPersons(); // Actualizar contador en la tabla
+                Person person = selectedPerson;
+                PersonService.onFx(personService.removeTelefono(person.getId(), selectedTelefono), updated -> {
+                    showPhones(person, updated); // Sólo se actualiza esta fila, sin recargar la tabla
                     showInfo("Éxito", "Teléfono eliminado correctamente");
-                } catch (SQLException e) {
-                    showError("Error", "No se pudo eliminar el teléfono: " + e.getMessage());
+                }, e -> showError("Error", "No se pudo eliminar el teléfono: " + e.getMessage()));
+            }
+        }
+    }
+    
+    /** Detiene las tareas en segundo plano; lo llama {@link App#stop()}. */
+    public void shutdown() {
+        if (syncTimer != null) {
+            syncTimer.stop();
+        }
+        personService.close();
+    }
+    
+    private void pollChanges() {
+        if (syncing) {
+            return;
+        }
+        syncing = true;
+        PersonService.onFx(personService.submit(changeFeed::poll), delta -> {
+            syncing = false;
+            applyChanges(delta);
+            showLocalSync();
+        }, e -> {
+            syncing = false;
+            System.err.println("No se pudieron leer los cambios de otros usuarios: " + e.getMessage());
+        });
+    }
+    
+    /** Aplica a la tabla sólo las filas que otros usuarios han cambiado. */
+    private void applyChanges(ChangeFeed.Delta delta) {
+        if (delta.isFullReload()) {
+            // Faltan cambios por leer: no se sabe qué filas están al día
+            reloadPersons();
+            return;
+        }
+        for (int id : delta.getDeleted()) {
+            if (personList != null) {
+                personList.removeById(id);
+            }
+            if (selectedPerson != null && selectedPerson.getId() == id) {
+                clearFields();
+            }
+        }
+        for (Contact c : delta.getUpdated()) {
+            Person fresh = Person.of(c);
+            if (personList != null && !personList.refresh(fresh)) {
+                personList.appendIfNew(fresh);
+            }
+            // Si se estaba editando la persona no se pisa lo escrito: al guardar habrá conflicto
+            if (selectedPerson != null && selectedPerson.getId() == c.getId() && !isEdited()) {
+                showCurrent(fresh);
+            }
+        }
+    }
+    
+    /** Con copia local: recarga tras la copia inicial y avisa de los cambios que el servidor no aceptó. */
+    private void showLocalSync() {
+        LocalSync sync = Db.localSync();
+        if (sync == null) {
+            return;
+        }
+        if (sync.takeReloadRequest()) {
+            // La copia se escribió sin pasar por el DAO: lo que tenga en memoria puede estar anticuado
+            PersonService.onFx(personService.submit(() -> {
+                personService.getDao().reloadAll();
+                return null;
+            }), v -> reloadPersons(), e -> showError("Error al recargar", "No se pudo recargar la agenda: " + e.getMessage()));
+        }
+        List<String> conflicts = sync.drainConflicts();
+        if (!conflicts.isEmpty()) {
+            showError("Conflictos de sincronización", "Estos cambios no se pudieron aplicar en el servidor:\n- "
+                    + String.join("\n- ", conflicts));
+        }
+    }
+    
+    /** Vuelve a leer la persona tras un conflicto y muestra sus datos actuales. */
+    private void reloadPerson(int id) {
+        PersonService.onFx(personService.reload(id), fresh -> {
+            if (fresh == null) {
+                if (personList != null) {
+                    personList.removeById(id);
                 }
+                clearFields();
+                return;
+            }
+            if (personList != null) {
+                personList.refresh(fresh);
             }
+            if (selectedPerson != null && selectedPerson.getId() == id) {
+                showCurrent(fresh);
+            }
+        }, e -> showError("Error", "No se pudo recargar la persona: " + e.getMessage()));
+    }
+    
+    private void showCurrent(Person fresh) {
+        if (selectedPerson != fresh) {
+            selectedPerson.setNombre(fresh.getNombre());
+            selectedPerson.setDireccion(fresh.getDireccion());
+            if (fresh.isTelefonosLoaded()) {
+                selectedPerson.setTelefonos(fresh.getTelefonos());
+            }
+            selectedPerson.setVersion(fresh.getVersion());
         }
+        loadPersonDetails(selectedPerson);
+    }
+    
+    private boolean isEdited() {
+        return shown != null && (!nombreField.getText().trim().equals(Objects.toString(shown.getNombre(), "").trim())
+                || !direccionField.getText().trim().equals(Objects.toString(shown.getDireccion(), "").trim()));
     }
     
     private void loadAllPersons() {
-        try {
-            List<Person> persons = personDao.findAll();
-            personList.clear();
-            personList.addAll(persons);
-        } catch (SQLException e) {
-            showError("Error al cargar datos", "No se pudieron cargar las personas: " + e.getMessage());
-        }
+        openPersonList(null);
     }
     
     private void searchPersons(String searchText) {
-        try {
-            List<Person> persons = personDao.findByName(searchText);
-            personList.clear();
-            personList.addAll(persons);
-        } catch (SQLException e) {
-            showError("Error en la búsqueda", "No se pudo realizar la búsqueda: " + e.getMessage());
+        // Una búsqueda nueva cancela la anterior si aún no ha terminado
+        PersonService.onFx(personService.search(searchText), ids -> {
+            personList = new PagedPersonList(personService, searchText, ids, this::onPageError, personTable::refresh);
+            personTable.setItems(personList);
+        }, e -> showError("Error en la búsqueda", "No se pudo realizar la búsqueda: " + e.getMessage()));
+    }
+    
+    private void reloadPersons() {
+        if (personList != null && personList.isSearchResult()) {
+            searchPersons(personList.getQuery());
+        } else {
+            openPersonList(null);
+        }
+    }
+    
+    private void openPersonList(String nameLike) {
+        // El recuento y la primera página se piden a la vez
+        CompletableFuture<List<Contact>> firstPage = personService.submit(() -> personService.getDao()
+                .findSummaryPage(0, PagedPersonList.DEFAULT_PAGE_SIZE, nameLike));
+        CompletableFuture<int[]> count = personService.latest(PersonService.SEARCH, () -> {
+            // Antes del recuento: lo que se cree después llegará por el feed de cambios
+            changeFeed.start();
+            return personService.getDao().countAndMaxId(nameLike);
+        });
+        count.whenComplete((n, e) -> {
+            if (count.isCancelled()) firstPage.cancel(true);
+        });
+        PersonService.onFx(count.thenCombine(firstPage, (counted, rows) -> {
+            PagedPersonList list = new PagedPersonList(personService, nameLike, counted[0], this::onPageError, personTable::refresh);
+            list.setMaxCountedId(counted[1]);
+            list.preloadFirstPage(rows);
+            return list;
+        }), list -> {
+            personList = list;
+            personTable.setItems(personList);
+            personTable.setPlaceholder(new Label("No hay personas"));
+            Startup.dataShown();
+        }, e -> {
+            if (!PersonService.isCancellation(e)) {
+                personTable.setPlaceholder(new Label("No se pudieron cargar las personas"));
+                showError("Error al cargar datos", "No se pudieron cargar las personas: " + e.getMessage());
+            }
+        });
+    }
+    
+    private void onPageError(Throwable e) {
+        showError("Error al cargar datos", "No se pudo cargar la página: " + e.getMessage());
+    }
+    
+    private void showPhones(Person person, Person updated) {
+        if (updated == null) {
+            return;
+        }
+        if (personList == null || !personList.refresh(updated)) {
+            person.setTelefonos(updated.getTelefonos());
+            person.setVersion(updated.getVersion());
+        }
+        if (selectedPerson == person) {
+            telefonoList.setAll(updated.getTelefonos());
+            // Sólo el cambio propio: si otro usuario cambió la persona antes, guardar dará conflicto
+            if (shown != null && updated.getVersion() == shown.getVersion() + 1) {
+                shown = shown.withVersion(updated.getVersion());
+            }
         }
     }
     
     private void loadPersonDetails(Person person) {
         selectedPerson = person;
+        shown = person.toContact();
         lblId.setText(String.valueOf(person.getId()));
         nombreField.setText(person.getNombre());
         direccionField.setText(person.getDireccion());
         
-        // Cargar teléfonos
-        try {
-            List<String> telefonos = personDao.getTelefonos(person.getId());
+        // Las filas de la tabla sólo traen el número de teléfonos: la lista se lee al seleccionar
+        // (una selección nueva cancela la carga anterior)
+        if (person.isTelefonosLoaded()) {
+            personService.cancel(PersonService.SELECTION);
+            telefonoList.setAll(person.getTelefonos());
+        } else {
             telefonoList.clear();
-            telefonoList.addAll(telefonos);
-        } catch (SQLException e) {
-            showError("Error", "No se pudieron cargar los teléfonos: " + e.getMessage());
+            PersonService.onFx(personService.getTelefonos(person.getId()), telefonos -> {
+                person.setTelefonos(telefonos);
+                if (selectedPerson == person) {
+                    telefonoList.setAll(telefonos);
+                }
+            }, e -> showError("Error", "No se pudieron cargar los teléfonos: " + e.getMessage()));
+        }
+        prefetchNeighbours(personTable.getSelectionModel().getSelectedIndex());
+    }
+
+    /** Deja en la caché las filas vecinas de {@code index}, para que al moverse con el teclado no haya espera. */
+    private void prefetchNeighbours(int index) {
+        if (personList == null || index < 0 || PREFETCH_ROWS <= 0) {
+            return;
+        }
+        int[] ids = new int[PREFETCH_ROWS * 2];
+        int n = 0;
+        for (int d = 1; d <= PREFETCH_ROWS; d++) {
+            for (int i : new int[]{index - d, index + d}) {
+                int id = personList.idAt(i);
+                if (id != 0) {
+                    ids[n++] = id;
+                }
+            }
+        }
+        if (n > 0) {
+            personService.prefetch(Arrays.copyOf(ids, n));
         }
     }
     
@@ -249,6 +550,8 @@ public class MainController implements Initializable {
         telefonoField.clear();
         telefonoList.clear();
         selectedPerson = null;
+        shown = null;
+        personService.cancel(PersonService.SELECTION);
         personTable.getSelectionModel().clearSelection();
     }
     
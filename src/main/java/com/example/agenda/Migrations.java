@@ -0,0 +1,175 @@
+package com.example.agenda;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aplica en orden las migraciones {@code migrations/V1.sql}, {@code V2.sql}... que aún no figuran en
+ * la tabla {@code schema_version}. La primera línea de cada fichero ({@code -- ...}) es su descripción.
+ * Cada migración guarda su SHA-256: si un fichero ya aplicado cambia, el arranque falla en lugar de
+ * dejar la base de datos a medias. Las sentencias deben poder repetirse ({@code IF NOT EXISTS}).
+ */
+final class Migrations {
+    static final String TABLE = "schema_version";
+
+    private Migrations() {
+    }
+
+    static final class Migration {
+        final int version;
+        final String description;
+        final String sql;
+        final String checksum;
+
+        Migration(int version, String sql) {
+            this.version = version;
+            this.sql = sql.replace("\r\n", "\n");
+            String first = this.sql.lines().findFirst().orElse("");
+            this.description = first.startsWith("--") ? first.substring(2).trim() : "V" + version;
+            this.checksum = sha256(this.sql);
+        }
+
+        List<String> statements() {
+            StringBuilder code = new StringBuilder();
+            for (String line : sql.split("\n")) {
+                if (!line.trim().startsWith("--")) {
+                    code.append(line).append('\n');
+                }
+            }
+            List<String> list = new ArrayList<>();
+            for (String s : code.toString().split(";")) {
+                if (!s.isBlank()) {
+                    list.add(s.trim());
+                }
+            }
+            return list;
+        }
+    }
+
+    /** Migraciones incluidas en la aplicación, de la V1 a la última consecutiva. */
+    static List<Migration> available() throws SQLException {
+        List<Migration> list = new ArrayList<>();
+        for (int v = 1; ; v++) {
+            try (InputStream in = Migrations.class.getResourceAsStream("migrations/V" + v + ".sql")) {
+                if (in == null) {
+                    return list;
+                }
+                list.add(new Migration(v, new String(in.readAllBytes(), StandardCharsets.UTF_8)));
+            } catch (IOException e) {
+                throw new SQLException("No se pudo leer la migración V" + v, e);
+            }
+        }
+    }
+
+    /** Aplica las migraciones pendientes y devuelve las versiones aplicadas. */
+    static List<Integer> migrate(Connection con) throws SQLException {
+        try (Statement st = con.createStatement()) {
+            st.executeUpdate("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                    + "version INT PRIMARY KEY, "
+                    + "descripcion VARCHAR(200) NOT NULL, "
+                    + "checksum CHAR(64) NOT NULL, "
+                    + "aplicada TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        }
+        Map<Integer, String> applied = applied(con);
+        List<Integer> done = new ArrayList<>();
+        for (Migration m : available()) {
+            String checksum = applied.get(m.version);
+            if (checksum != null) {
+                verify(m, checksum);
+            } else if (apply(con, m)) {
+                done.add(m.version);
+            }
+        }
+        return done;
+    }
+
+    private static Map<Integer, String> applied(Connection con) throws SQLException {
+        Map<Integer, String> applied = new HashMap<>();
+        try (Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT version, checksum FROM " + TABLE)) {
+            while (rs.next()) {
+                applied.put(rs.getInt(1), rs.getString(2).trim());
+            }
+        }
+        return applied;
+    }
+
+    private static String appliedChecksum(Connection con, int version) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SELECT checksum FROM " + TABLE + " WHERE version = ?")) {
+            ps.setInt(1, version);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1).trim() : null;
+            }
+        }
+    }
+
+    private static void verify(Migration m, String checksum) throws SQLException {
+        if (!checksum.equalsIgnoreCase(m.checksum)) {
+            throw new SQLException("La migración V" + m.version + " (" + m.description
+                    + ") ha cambiado después de aplicarse: crea una migración nueva en lugar de editarla");
+        }
+    }
+
+    // Devuelve false si otro proceso la aplicó a la vez (sus sentencias son repetibles)
+    private static boolean apply(Connection con, Migration m) throws SQLException {
+        boolean autoCommit = con.getAutoCommit();
+        boolean recording = false;
+        con.setAutoCommit(false);
+        try {
+            // MariaDB confirma cada sentencia DDL por separado; por eso deben poder repetirse
+            try (Statement st = con.createStatement()) {
+                for (String sql : m.statements()) {
+                    st.executeUpdate(sql);
+                }
+            }
+            recording = true;
+            try (PreparedStatement ps = con.prepareStatement(
+                    "INSERT INTO " + TABLE + " (version, descripcion, checksum) VALUES (?, ?, ?)")) {
+                ps.setInt(1, m.version);
+                ps.setString(2, m.description);
+                ps.setString(3, m.checksum);
+                ps.executeUpdate();
+            }
+            con.commit();
+            return true;
+        } catch (SQLException e) {
+            con.rollback();
+            // Sólo una clave repetida al anotarla indica que otro proceso la aplicó a la vez, y sólo si
+            // su fila está ahí; un error de las sentencias de la migración nunca se da por bueno
+            if (recording && e instanceof SQLIntegrityConstraintViolationException) {
+                String checksum = appliedChecksum(con, m.version);
+                if (checksum != null) {
+                    verify(m, checksum);
+                    return false;
+                }
+            }
+            throw new SQLException("Error aplicando la migración V" + m.version + " (" + m.description + "): "
+                    + e.getMessage(), e.getSQLState(), e);
+        } finally {
+            con.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static String sha256(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.example.agenda;
+
+import com.example.agenda.model.Contact;
+import com.example.agenda.model.Person;
+import com.example.agenda.service.PersonService;
+import javafx.collections.ObservableListBase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Lista de solo lectura para el {@code TableView} que carga las personas por páginas
+ * a medida que la tabla pide filas, y descarta las páginas más alejadas de la zona visible.
+ * Recorre la tabla completa con paginación por clave sobre {@code p.id} o, para resultados
+ * de búsqueda, una lista de ids ya ordenada.
+ * <p>
+ * Las páginas se piden en segundo plano: mientras llegan, {@link #get(int)} devuelve
+ * {@code null} y la fila se muestra vacía. Se guardan como {@link Contact} y cada fila se
+ * envuelve en un {@link Person} sólo cuando la tabla la pide. Las filas son resúmenes con el número
+ * de teléfonos (un {@code COUNT} agrupado por página); la lista de teléfonos de una fila se carga al
+ * seleccionarla. Sólo debe usarse desde el hilo de JavaFX.
+ */
+public class PagedPersonList extends ObservableListBase<Person> {
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int DEFAULT_MAX_PAGES = 8;
+
+    private final PersonService service;
+    private final String nameLike;
+    private int[] ids;
+    private final int pageSize;
+    private final int maxPages;
+    private int size;
+    private final Consumer<Throwable> onError;
+    private final Runnable onRowsChanged;
+
+    private final Map<Integer, Rows> pages = new HashMap<>();
+    private final Set<Integer> loading = new HashSet<>();
+    // afterIds[k] = último id de la página k-1 (0 para la primera); -1 = aún desconocido
+    private int[] afterIds;
+    private int lastRequested;
+    // Cambia al quitar filas: las páginas pedidas antes ya no encajan y se descartan
+    private int version;
+    // Mayor id incluido en el recuento; una persona con id mayor es posterior y se añade al final
+    private int maxCountedId = Integer.MAX_VALUE;
+
+    public PagedPersonList(PersonService service, String nameLike, int size,
+                           Consumer<Throwable> onError, Runnable onRowsChanged) {
+        this(service, nameLike, size, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES, onError, onRowsChanged);
+    }
+
+    /** Resultados de búsqueda: las personas de {@code ids}, en ese orden. */
+    public PagedPersonList(PersonService service, String query, int[] ids,
+                           Consumer<Throwable> onError, Runnable onRowsChanged) {
+        this(service, query, ids, ids.length, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES, onError, onRowsChanged);
+    }
+
+    public PagedPersonList(PersonService service, String nameLike, int size, int pageSize, int maxPages,
+                           Consumer<Throwable> onError, Runnable onRowsChanged) {
+        this(service, nameLike, null, size, pageSize, maxPages, onError, onRowsChanged);
+    }
+
+    private PagedPersonList(PersonService service, String nameLike, int[] ids, int size, int pageSize, int maxPages,
+                            Consumer<Throwable> onError, Runnable onRowsChanged) {
+        this.service = service;
+        this.nameLike = nameLike;
+        this.ids = ids;
+        this.size = size;
+        this.pageSize = pageSize;
+        this.maxPages = Math.max(2, maxPages);
+        this.onError = onError;
+        this.onRowsChanged = onRowsChanged;
+        this.afterIds = new int[0];
+        resizeAfterIds();
+    }
+
+    /**
+     * Primera página ya leída (por ejemplo en paralelo con el recuento), para que la tabla no tenga
+     * que pedirla. Debe llamarse antes de mostrar la lista.
+     */
+    public void preloadFirstPage(List<Contact> rows) {
+        if (ids != null || size == 0) {
+            return;
+        }
+        List<Contact> first = rows.subList(0, Math.min(rows.size(), Math.min(size, pageSize)));
+        pages.put(0, new Rows(first));
+        if (!first.isEmpty() && afterIds.length > 1) {
+            afterIds[1] = first.get(first.size() - 1).getId();
+        }
+    }
+
+    /**
+     * Mayor id que había al contar las filas (ver {@code PersonDao.countAndMaxId}); sin él,
+     * {@link #appendIfNew(Person)} no añade nada.
+     */
+    public void setMaxCountedId(int maxId) {
+        this.maxCountedId = maxId;
+    }
+
+    @Override
+    public Person get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Índice " + index + " fuera de rango (tamaño " + size + ")");
+        }
+        int pageIndex = index / pageSize;
+        lastRequested = pageIndex;
+        Rows page = pages.get(pageIndex);
+        if (page == null) {
+            request(pageIndex);
+            return null;
+        }
+        int offset = index % pageSize;
+        return offset < page.size() ? page.person(offset) : null;
+    }
+
+    /** Id de la fila {@code index} si su página está cargada, o 0; a diferencia de {@link #get(int)}, no pide la página. */
+    public int idAt(int index) {
+        if (index < 0 || index >= size) {
+            return 0;
+        }
+        Rows page = pages.get(index / pageSize);
+        int offset = index % pageSize;
+        return page != null && offset < page.size() ? page.contacts.get(offset).getId() : 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /** Texto buscado o filtro de nombre; {@code null} si la lista es la tabla completa. */
+    public String getQuery() {
+        return nameLike;
+    }
+
+    public boolean isSearchResult() {
+        return ids != null;
+    }
+
+    public int getLoadedPages() {
+        return pages.size();
+    }
+
+    /**
+     * Sustituye los datos de la fila con el id de {@code fresh} si está cargada, conservando
+     * el objeto de la fila (y por tanto la selección). Devuelve si la fila estaba cargada.
+     */
+    public boolean refresh(Person fresh) {
+        int index = indexOf(fresh.getId());
+        if (index < 0) {
+            return false;
+        }
+        Rows page = pages.get(index / pageSize);
+        page.contacts.set(index % pageSize, fresh.toContact());
+        Person row = page.persons.get(index % pageSize);
+        if (row != null && row != fresh) {
+            row.setNombre(fresh.getNombre());
+            row.setDireccion(fresh.getDireccion());
+            if (fresh.isTelefonosLoaded()) {
+                row.setTelefonos(fresh.getTelefonos());
+            }
+            row.setVersion(fresh.getVersion());
+        }
+        beginChange();
+        nextUpdate(index);
+        endChange();
+        onRowsChanged.run();
+        return true;
+    }
+
+    /**
+     * Añade al final una persona creada por otro cliente si no estaba ya incluida en el recuento.
+     * Sólo en la tabla completa sin filtro; devuelve si se añadió.
+     */
+    public boolean appendIfNew(Person p) {
+        if (ids != null || nameLike != null || p.getId() <= maxCountedId) {
+            return false;
+        }
+        append(p);
+        return true;
+    }
+
+    /** Añade al final una persona recién creada (su id es el mayor). Sólo para la tabla completa. */
+    public void append(Person p) {
+        if (ids != null) {
+            throw new IllegalStateException("No se puede añadir a un resultado de búsqueda");
+        }
+        if (maxCountedId != Integer.MAX_VALUE) {
+            maxCountedId = Math.max(maxCountedId, p.getId());
+        }
+        size++;
+        resizeAfterIds();
+        int pageIndex = (size - 1) / pageSize;
+        Rows page = pages.get(pageIndex);
+        if (page != null) {
+            page.contacts.add(p.toContact());
+            page.persons.add(p);
+        } else if (pageIndex > 0 && pages.containsKey(pageIndex - 1)) {
+            List<Contact> previous = pages.get(pageIndex - 1).contacts;
+            afterIds[pageIndex] = previous.get(previous.size() - 1).getId();
+        }
+        beginChange();
+        nextAdd(size - 1, size);
+        endChange();
+        onRowsChanged.run();
+    }
+
+    /**
+     * Quita la fila de la persona {@code id} si está cargada. Las páginas siguientes se vuelven
+     * a pedir cuando la tabla las necesite.
+     */
+    public boolean removeById(int id) {
+        int index = indexOf(id);
+        if (index < 0) {
+            return false;
+        }
+        Person removed = get(index);
+        int pageIndex = index / pageSize;
+        version++;
+        loading.clear();
+        pages.keySet().removeIf(k -> k >= pageIndex);
+        for (int k = pageIndex + 1; k < afterIds.length; k++) {
+            afterIds[k] = -1;
+        }
+        if (ids != null) {
+            int[] remaining = new int[ids.length - 1];
+            System.arraycopy(ids, 0, remaining, 0, index);
+            System.arraycopy(ids, index + 1, remaining, index, ids.length - index - 1);
+            ids = remaining;
+        }
+        size--;
+        resizeAfterIds();
+        beginChange();
+        nextRemove(index, removed);
+        endChange();
+        onRowsChanged.run();
+        return true;
+    }
+
+    private int indexOf(int id) {
+        for (Map.Entry<Integer, Rows> e : pages.entrySet()) {
+            List<Contact> rows = e.getValue().contacts;
+            for (int i = 0; i < rows.size(); i++) {
+                if (rows.get(i).getId() == id) {
+                    return e.getKey() * pageSize + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void resizeAfterIds() {
+        int known = afterIds.length;
+        afterIds = Arrays.copyOf(afterIds, (size + pageSize - 1) / pageSize);
+        for (int k = known; k < afterIds.length; k++) {
+            afterIds[k] = k == 0 ? 0 : -1;
+        }
+    }
+
+    private void request(int pageIndex) {
+        if (!loading.add(pageIndex)) {
+            return;
+        }
+        int requestVersion = version;
+        if (ids != null) {
+            int[] slice = Arrays.copyOfRange(ids, pageIndex * pageSize, Math.min(ids.length, (pageIndex + 1) * pageSize));
+            PersonService.onFx(service.submit(() -> new Page(0, service.getDao().findSummariesByIds(slice))),
+                    page -> loaded(pageIndex, page, requestVersion), error -> {
+                        if (requestVersion != version) return;
+                        loading.remove(pageIndex);
+                        onError.accept(error);
+                    });
+            return;
+        }
+        // Frontera conocida más cercana; desde ella se salta sin leer las páginas intermedias
+        int known = pageIndex;
+        while (afterIds[known] < 0) {
+            known--;
+        }
+        int knownAfterId = afterIds[known];
+        int skip = (pageIndex - known) * pageSize;
+
+        PersonService.onFx(service.submit(() -> {
+            int afterId = knownAfterId;
+            if (skip > 0) {
+                afterId = service.getDao().findIdAfter(knownAfterId, skip, nameLike);
+                if (afterId == 0) {
+                    // Se borraron filas desde que se contó: la página queda vacía
+                    afterId = Integer.MAX_VALUE;
+                }
+            }
+            return new Page(afterId, service.getDao().findSummaryPage(afterId, pageSize, nameLike));
+        }), page -> loaded(pageIndex, page, requestVersion), error -> {
+            if (requestVersion != version) return;
+            loading.remove(pageIndex);
+            onError.accept(error);
+        });
+    }
+
+    private void loaded(int pageIndex, Page page, int requestVersion) {
+        if (requestVersion != version) {
+            return;
+        }
+        loading.remove(pageIndex);
+        afterIds[pageIndex] = page.afterId;
+        if (!page.rows.isEmpty() && pageIndex + 1 < afterIds.length) {
+            afterIds[pageIndex + 1] = page.rows.get(page.rows.size() - 1).getId();
+        }
+        pages.put(pageIndex, new Rows(page.rows));
+        evictFarthestFrom(lastRequested);
+
+        int from = pageIndex * pageSize;
+        int to = Math.min(from + pageSize, size);
+        beginChange();
+        for (int i = from; i < to; i++) {
+            nextUpdate(i);
+        }
+        endChange();
+        onRowsChanged.run();
+    }
+
+    private void evictFarthestFrom(int pageIndex) {
+        while (pages.size() > maxPages) {
+            int farthest = pageIndex;
+            for (int k : pages.keySet()) {
+                if (Math.abs(k - pageIndex) > Math.abs(farthest - pageIndex)) {
+                    farthest = k;
+                }
+            }
+            pages.remove(farthest);
+        }
+    }
+
+    private static final class Page {
+        final int afterId;
+        final List<Contact> rows;
+
+        Page(int afterId, List<Contact> rows) {
+            this.afterId = afterId;
+            this.rows = rows;
+        }
+    }
+
+    /** Una página cargada: los contactos y, en paralelo, los {@link Person} ya creados para la tabla. */
+    private static final class Rows {
+        final List<Contact> contacts;
+        final List<Person> persons;
+
+        Rows(List<Contact> contacts) {
+            this.contacts = new ArrayList<>(contacts);
+            this.persons = new ArrayList<>(Collections.nCopies(contacts.size(), null));
+        }
+
+        int size() {
+            return contacts.size();
+        }
+
+        Person person(int offset) {
+            Person p = persons.get(offset);
+            if (p == null) {
+                p = Person.of(contacts.get(offset));
+                persons.set(offset, p);
+            }
+            return p;
+        }
+    }
+}
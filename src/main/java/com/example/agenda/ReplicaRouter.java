@@ -0,0 +1,122 @@
+package com.example.agenda;
+
+import com.example.agenda.metrics.Metrics;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reparte las lecturas entre las réplicas por turnos, saltándose las que no responden.
+ * Un hilo comprueba periódicamente todas las réplicas y vuelve a activar las que se recuperan.
+ */
+final class ReplicaRouter implements AutoCloseable {
+    static final class Replica {
+        final String name;
+        final ConnectionPool pool;
+        volatile boolean healthy = true;
+
+        Replica(String name, ConnectionPool pool) {
+            this.name = name;
+            this.pool = pool;
+        }
+    }
+
+    private final String poolName;
+    private final List<Replica> replicas;
+    private final int validationTimeoutSec;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService checker;
+
+    ReplicaRouter(String poolName, List<Replica> replicas, long healthCheckMs, int validationTimeoutSec) {
+        this.poolName = poolName;
+        this.replicas = List.copyOf(replicas);
+        this.validationTimeoutSec = validationTimeoutSec;
+        if (this.replicas.isEmpty()) {
+            checker = null;
+            return;
+        }
+        checker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "agenda-replica-check");
+            t.setDaemon(true);
+            return t;
+        });
+        checker.scheduleWithFixedDelay(this::checkAll, healthCheckMs, healthCheckMs, TimeUnit.MILLISECONDS);
+        Metrics.gauge("replicas." + poolName, out -> {
+            out.append("# TYPE agenda_db_replica_up gauge\n");
+            for (Replica r : this.replicas) {
+                Metrics.sample(out, "agenda_db_replica_up",
+                        "pool=\"" + poolName + "\",replica=\"" + r.name + "\"", r.healthy ? 1 : 0);
+            }
+        });
+    }
+
+    boolean isEmpty() {
+        return replicas.isEmpty();
+    }
+
+    List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    /** Conexión de la siguiente réplica sana, o {@code null} si no hay ninguna disponible. */
+    Connection getConnection() {
+        int n = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), n);
+        for (int i = 0; i < n; i++) {
+            Replica r = replicas.get((start + i) % n);
+            if (!r.healthy) {
+                continue;
+            }
+            try {
+                return r.pool.getConnection();
+            } catch (SQLTimeoutException e) {
+                // Réplica saturada pero viva: se prueba la siguiente
+            } catch (SQLException e) {
+                markDown(r, e);
+            }
+        }
+        return null;
+    }
+
+    void checkAll() {
+        for (Replica r : replicas) {
+            try (Connection c = r.pool.getConnection()) {
+                if (c.isValid(validationTimeoutSec)) {
+                    if (!r.healthy) {
+                        System.err.println("Réplica " + r.name + " disponible de nuevo");
+                    }
+                    r.healthy = true;
+                } else {
+                    markDown(r, null);
+                }
+            } catch (SQLTimeoutException e) {
+                // Todas sus conexiones están ocupadas: sigue viva
+            } catch (SQLException e) {
+                markDown(r, e);
+            }
+        }
+    }
+
+    private void markDown(Replica r, SQLException e) {
+        if (r.healthy) {
+            System.err.println("Réplica " + r.name + " fuera de servicio"
+                    + (e != null ? ": " + e.getMessage() : ""));
+        }
+        r.healthy = false;
+    }
+
+    @Override
+    public void close() {
+        if (checker != null) {
+            checker.shutdownNow();
+            Metrics.removeGauge("replicas." + poolName);
+        }
+        replicas.forEach(r -> r.pool.close());
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.agenda;
+
+import javafx.application.Platform;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tiempos de arranque medidos desde el inicio de la JVM: cuándo se ve la ventana y cuándo se
+ * muestran los primeros datos. Con {@code -Dagenda.exitAfterStartup=true} la aplicación se cierra
+ * al tener los datos, para generar el archivo CDS (perfil {@code cds} del pom).
+ */
+final class Startup {
+    private static final long JVM_START_MS = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private static final Set<String> marked = ConcurrentHashMap.newKeySet();
+
+    private Startup() {
+    }
+
+    static void windowShown() {
+        mark("ventana visible");
+    }
+
+    static void dataShown() {
+        if (mark("primeros datos") && Boolean.getBoolean("agenda.exitAfterStartup")) {
+            Platform.exit();
+        }
+    }
+
+    private static boolean mark(String phase) {
+        if (!marked.add(phase)) {
+            return false;
+        }
+        System.out.println("Arranque: " + phase + " a los " + (System.currentTimeMillis() - JVM_START_MS) + " ms");
+        return true;
+    }
+}
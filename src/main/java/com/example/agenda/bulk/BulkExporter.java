@@ -0,0 +1,50 @@
+package com.example.agenda.bulk;
+
+import com.example.agenda.dao.PersonDao;
+import com.example.agenda.dao.UncheckedSQLException;
+import com.example.agenda.model.Contact;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Exporta todos los contactos escribiendo cada uno en cuanto se lee con {@link PersonDao#stream(String, int)},
+ * sin construir la lista completa en memoria.
+ */
+public class BulkExporter {
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final PersonDao dao = new PersonDao();
+    private final int fetchSize;
+
+    public BulkExporter() {
+        this(DEFAULT_FETCH_SIZE);
+    }
+
+    public BulkExporter(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    public BulkStats exportTo(Writer out, ContactFormat format) throws IOException, SQLException {
+        ContactWriter writer = format.writer(out);
+        long start = System.nanoTime();
+        long contacts = 0;
+        long phones = 0;
+        try (Stream<Contact> stream = dao.stream(null, fetchSize)) {
+            Iterator<Contact> it = stream.iterator();
+            while (it.hasNext()) {
+                Contact c = it.next();
+                writer.write(c);
+                contacts++;
+                phones += c.getTelefonos().size();
+            }
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        }
+        out.flush();
+        return new BulkStats(contacts, phones, System.nanoTime() - start);
+    }
+}
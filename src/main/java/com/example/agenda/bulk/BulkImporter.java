@@ -0,0 +1,137 @@
+package com.example.agenda.bulk;
+
+import com.example.agenda.Db;
+import com.example.agenda.dao.ChangeLog;
+import com.example.agenda.dao.PhoneNumbers;
+import com.example.agenda.model.Contact;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Importa contactos desde CSV o JSON Lines leyendo el fichero en streaming y enviando
+ * {@code INSERT} de varias filas a la vez. Confirma cada {@code commitSize} contactos, así que
+ * la memoria no depende del tamaño del fichero; si falla a mitad, lo ya confirmado se queda.
+ * <p>
+ * Escribe directamente en la base de datos: si hay un {@code PersonDao} en uso en el mismo
+ * proceso, después conviene llamar a su {@code rebuildSearchIndex()}.
+ */
+public class BulkImporter {
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final int DEFAULT_COMMIT_SIZE = 10_000;
+
+    private final int batchSize;
+    private final int commitSize;
+    // Las altas se anotan en Cambios para que los clientes abiertos las vean
+    private final String origin = ChangeLog.newOrigin();
+
+    public BulkImporter() {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_COMMIT_SIZE);
+    }
+
+    public BulkImporter(int batchSize, int commitSize) {
+        if (batchSize < 1 || commitSize < 1) {
+            throw new IllegalArgumentException("batchSize y commitSize deben ser positivos");
+        }
+        this.batchSize = batchSize;
+        this.commitSize = commitSize;
+    }
+
+    public BulkStats importFrom(Reader in, ContactFormat format) throws IOException, SQLException {
+        ContactReader reader = format.reader(in);
+        long start = System.nanoTime();
+        long contacts = 0;
+        long phones = 0;
+        try (Connection con = Db.getConnection()) {
+            con.setAutoCommit(false);
+            List<Contact> batch = new ArrayList<>(batchSize);
+            long uncommitted = 0;
+            Contact row;
+            while ((row = reader.next()) != null) {
+                batch.add(row);
+                if (batch.size() == batchSize) {
+                    phones += insertBatch(con, batch);
+                    contacts += batch.size();
+                    uncommitted += batch.size();
+                    batch.clear();
+                    if (uncommitted >= commitSize) {
+                        con.commit();
+                        Db.markWrite();
+                        uncommitted = 0;
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                phones += insertBatch(con, batch);
+                contacts += batch.size();
+            }
+            con.commit();
+            Db.markWrite();
+        }
+        return new BulkStats(contacts, phones, System.nanoTime() - start);
+    }
+
+    /** Inserta las personas del lote en una sentencia y después todos sus teléfonos. */
+    private int insertBatch(Connection con, List<Contact> batch) throws SQLException {
+        int[] ids = new int[batch.size()];
+        try (PreparedStatement ps = con.prepareStatement(
+                multiRowInsert("INSERT INTO Personas (nombre, direccion) VALUES ", batch.size(), 2),
+                Statement.RETURN_GENERATED_KEYS)) {
+            int i = 1;
+            for (Contact row : batch) {
+                ps.setString(i++, row.getNombre());
+                ps.setString(i++, row.getDireccion());
+            }
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                int n = 0;
+                while (keys.next() && n < ids.length) {
+                    ids[n++] = keys.getInt(1);
+                }
+                if (n != ids.length) {
+                    throw new SQLException("El driver devolvió " + n + " claves generadas para " + ids.length + " filas");
+                }
+            }
+        }
+        ChangeLog.recordAll(con, origin, ids, null, false);
+
+        List<Object[]> phones = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            for (String t : batch.get(i).getTelefonos()) {
+                phones.add(new Object[]{ids[i], t});
+            }
+        }
+        for (int from = 0; from < phones.size(); from += batchSize) {
+            List<Object[]> chunk = phones.subList(from, Math.min(from + batchSize, phones.size()));
+            try (PreparedStatement ps = con.prepareStatement(
+                    multiRowInsert("INSERT INTO Telefonos (personaId, telefono, numero) VALUES ", chunk.size(), 3))) {
+                int i = 1;
+                for (Object[] phone : chunk) {
+                    ps.setInt(i++, (Integer) phone[0]);
+                    ps.setString(i++, (String) phone[1]);
+                    PhoneNumbers.bind(ps, i++, (String) phone[1]);
+                }
+                ps.executeUpdate();
+            }
+        }
+        return phones.size();
+    }
+
+    private static String multiRowInsert(String prefix, int rows, int columns) {
+        String row = "(" + String.join(", ", Collections.nCopies(columns, "?")) + ")";
+        StringBuilder sql = new StringBuilder(prefix.length() + rows * (row.length() + 2));
+        sql.append(prefix);
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "" : ", ").append(row);
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.agenda.bulk;
+
+import java.util.Locale;
+
+/** Resultado de una importación o exportación masiva. */
+public class BulkStats {
+    private final long contacts;
+    private final long phones;
+    private final long elapsedNanos;
+
+    public BulkStats(long contacts, long phones, long elapsedNanos) {
+        this.contacts = contacts;
+        this.phones = phones;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getContacts() { return contacts; }
+    public long getPhones() { return phones; }
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    /** Contactos por segundo. */
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : contacts * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d contactos, %d teléfonos en %.2f s (%.0f filas/s)",
+                contacts, phones, elapsedNanos / 1e9, getRowsPerSecond());
+    }
+}
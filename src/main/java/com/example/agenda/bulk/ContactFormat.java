@@ -0,0 +1,27 @@
+package com.example.agenda.bulk;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+public enum ContactFormat {
+    /** Cabecera {@code id,nombre,direccion,telefonos}; los teléfonos separados por {@code |}. */
+    CSV,
+    /** Un objeto JSON por línea: {@code {"id":1,"nombre":"..","direccion":"..","telefonos":[".."]}}. */
+    JSONL;
+
+    public static ContactFormat fromFileName(String fileName) {
+        String lower = fileName.toLowerCase();
+        if (lower.endsWith(".csv")) return CSV;
+        if (lower.endsWith(".jsonl") || lower.endsWith(".ndjson")) return JSONL;
+        throw new IllegalArgumentException("Formato no reconocido (usa .csv o .jsonl): " + fileName);
+    }
+
+    ContactReader reader(Reader in) throws IOException {
+        return this == CSV ? new CsvContactReader(in) : new JsonLinesContactReader(in);
+    }
+
+    ContactWriter writer(Writer out) throws IOException {
+        return this == CSV ? new CsvContactWriter(out) : new JsonLinesContactWriter(out);
+    }
+}
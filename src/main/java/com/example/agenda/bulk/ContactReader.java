@@ -0,0 +1,11 @@
+package com.example.agenda.bulk;
+
+import com.example.agenda.model.Contact;
+
+import java.io.IOException;
+
+/** Lee contactos de uno en uno, sin cargar el fichero entero en memoria. */
+interface ContactReader {
+    /** El siguiente contacto, o {@code null} al final del fichero. */
+    Contact next() throws IOException;
+}
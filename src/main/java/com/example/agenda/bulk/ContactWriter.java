@@ -0,0 +1,9 @@
+package com.example.agenda.bulk;
+
+import com.example.agenda.model.Contact;
+
+import java.io.IOException;
+
+interface ContactWriter {
+    void write(Contact row) throws IOException;
+}
@@ -0,0 +1,115 @@
+package com.example.agenda.bulk;
+
+import com.example.agenda.model.Contact;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CSV (RFC 4180) con cabecera. Reconoce las columnas {@code id}, {@code nombre},
+ * {@code direccion} y {@code telefonos} (separados por {@code |}) en cualquier orden;
+ * sólo {@code nombre} es obligatoria.
+ */
+class CsvContactReader implements ContactReader {
+    private final BufferedReader in;
+    private final int idCol;
+    private final int nombreCol;
+    private final int direccionCol;
+    private final int telefonosCol;
+    private long line = 1;
+
+    CsvContactReader(Reader reader) throws IOException {
+        this.in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        List<String> header = readRecord();
+        if (header == null) {
+            throw new IOException("El CSV está vacío");
+        }
+        if (!header.isEmpty() && header.get(0).startsWith("\uFEFF")) {
+            header.set(0, header.get(0).substring(1));
+        }
+        idCol = header.indexOf("id");
+        nombreCol = header.indexOf("nombre");
+        direccionCol = header.indexOf("direccion");
+        telefonosCol = header.indexOf("telefonos");
+        if (nombreCol < 0) {
+            throw new IOException("Falta la columna 'nombre' en la cabecera: " + header);
+        }
+    }
+
+    @Override
+    public Contact next() throws IOException {
+        List<String> record;
+        do {
+            record = readRecord();
+            if (record == null) return null;
+        } while (record.size() == 1 && record.get(0).isEmpty());
+
+        long at = line - 1;
+        String nombre = column(record, nombreCol);
+        if (nombre == null || nombre.isBlank()) {
+            throw new IOException("Línea " + at + ": falta el nombre");
+        }
+        int id = 0;
+        String idText = column(record, idCol);
+        if (idText != null && !idText.isBlank()) {
+            try {
+                id = Integer.parseInt(idText.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Línea " + at + ": id inválido: " + idText);
+            }
+        }
+        String telefonos = column(record, telefonosCol);
+        List<String> phones = telefonos == null || telefonos.isBlank()
+                ? List.of()
+                : Arrays.asList(telefonos.split("\\|"));
+        return new Contact(id, nombre, column(record, direccionCol), phones);
+    }
+
+    private static String column(List<String> record, int index) {
+        return index >= 0 && index < record.size() ? record.get(index) : null;
+    }
+
+    private List<String> readRecord() throws IOException {
+        int c = in.read();
+        if (c < 0) return null;
+        long start = line;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c < 0) throw new IOException("Línea " + start + ": comillas sin cerrar");
+                if (c == '"') {
+                    in.mark(1);
+                    int nextChar = in.read();
+                    if (nextChar == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        in.reset();
+                    }
+                } else {
+                    if (c == '\n') line++;
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c < 0) {
+                line++;
+                break;
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+            c = in.read();
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.agenda.bulk;
+
+import com.example.agenda.model.Contact;
+
+import java.io.IOException;
+import java.io.Writer;
+
+class CsvContactWriter implements ContactWriter {
+    private final Writer out;
+
+    CsvContactWriter(Writer out) throws IOException {
+        this.out = out;
+        out.write("id,nombre,direccion,telefonos\n");
+    }
+
+    @Override
+    public void write(Contact row) throws IOException {
+        out.write(Integer.toString(row.getId()));
+        out.write(',');
+        writeField(row.getNombre());
+        out.write(',');
+        writeField(row.getDireccion());
+        out.write(',');
+        writeField(String.join("|", row.getTelefonos()));
+        out.write('\n');
+    }
+
+    private void writeField(String value) throws IOException {
+        if (value == null) return;
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.agenda.bulk;
+
+import com.example.agenda.model.Contact;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Un objeto JSON plano por línea. Sólo se interpretan {@code id}, {@code nombre},
+ * {@code direccion} y {@code telefonos}; otras claves se ignoran.
+ */
+class JsonLinesContactReader implements ContactReader {
+    private final BufferedReader in;
+    private long lineNumber;
+    private String line;
+    private int pos;
+
+    JsonLinesContactReader(Reader reader) {
+        this.in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    @Override
+    public Contact next() throws IOException {
+        do {
+            line = in.readLine();
+            lineNumber++;
+            if (line == null) return null;
+        } while (line.isBlank());
+        pos = 0;
+
+        int id = 0;
+        String nombre = null;
+        String direccion = null;
+        List<String> telefonos = List.of();
+        expect('{');
+        if (peek() != '}') {
+            do {
+                String key = readString();
+                expect(':');
+                switch (key) {
+                    case "id":
+                        Object value = readValue();
+                        id = value instanceof String ? parseId((String) value) : 0;
+                        break;
+                    case "nombre":
+                        nombre = asString(readValue());
+                        break;
+                    case "direccion":
+                        direccion = asString(readValue());
+                        break;
+                    case "telefonos":
+                        telefonos = readStringArray();
+                        break;
+                    default:
+                        skipValue();
+                }
+            } while (consume(','));
+        }
+        expect('}');
+        if (nombre == null || nombre.isBlank()) {
+            throw error("falta el nombre");
+        }
+        return new Contact(id, nombre, direccion, telefonos);
+    }
+
+    private int parseId(String text) throws IOException {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw error("id inválido: " + text);
+        }
+    }
+
+    private String asString(Object value) {
+        return value instanceof String ? (String) value : null;
+    }
+
+    // Devuelve String (también para números y booleanos) o null
+    private Object readValue() throws IOException {
+        char c = peek();
+        if (c == '"') return readString();
+        if (c == '[' || c == '{') {
+            skipValue();
+            return null;
+        }
+        int start = pos;
+        while (pos < line.length() && ",}] \t".indexOf(line.charAt(pos)) < 0) pos++;
+        String literal = line.substring(start, pos);
+        if (literal.isEmpty()) throw error("valor esperado");
+        return literal.equals("null") ? null : literal;
+    }
+
+    private List<String> readStringArray() throws IOException {
+        if (peek() == 'n') {
+            readValue();
+            return List.of();
+        }
+        expect('[');
+        List<String> values = new ArrayList<>();
+        if (peek() != ']') {
+            do {
+                Object value = readValue();
+                if (value != null) values.add((String) value);
+            } while (consume(','));
+        }
+        expect(']');
+        return values;
+    }
+
+    private void skipValue() throws IOException {
+        char c = peek();
+        if (c == '{' || c == '[') {
+            char close = c == '{' ? '}' : ']';
+            pos++;
+            if (peek() != close) {
+                do {
+                    if (c == '{') {
+                        readString();
+                        expect(':');
+                    }
+                    skipValue();
+                } while (consume(','));
+            }
+            expect(close);
+        } else {
+            readValue();
+        }
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            if (pos >= line.length()) throw error("cadena sin cerrar");
+            char c = line.charAt(pos++);
+            if (c == '"') return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= line.length()) throw error("escape incompleto");
+            char e = line.charAt(pos++);
+            switch (e) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                case 'r': sb.append('\r'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (pos + 4 > line.length()) throw error("escape \\u incompleto");
+                    try {
+                        sb.append((char) Integer.parseInt(line.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException ex) {
+                        throw error("escape \\u inválido");
+                    }
+                    pos += 4;
+                    break;
+                default: sb.append(e);
+            }
+        }
+    }
+
+    private char peek() throws IOException {
+        while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) pos++;
+        if (pos >= line.length()) throw error("fin de línea inesperado");
+        return line.charAt(pos);
+    }
+
+    private boolean consume(char c) throws IOException {
+        if (peek() == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) throws IOException {
+        if (!consume(c)) throw error("se esperaba '" + c + "'");
+    }
+
+    private IOException error(String message) {
+        return new IOException("Línea " + lineNumber + ", columna " + (pos + 1) + ": " + message);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.agenda.bulk;
+
+import com.example.agenda.model.Contact;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+class JsonLinesContactWriter implements ContactWriter {
+    private final Writer out;
+
+    JsonLinesContactWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(Contact row) throws IOException {
+        out.write("{\"id\":");
+        out.write(Integer.toString(row.getId()));
+        out.write(",\"nombre\":");
+        writeString(row.getNombre());
+        out.write(",\"direccion\":");
+        writeString(row.getDireccion());
+        out.write(",\"telefonos\":[");
+        List<String> telefonos = row.getTelefonos();
+        for (int i = 0; i < telefonos.size(); i++) {
+            if (i > 0) out.write(',');
+            writeString(telefonos.get(i));
+        }
+        out.write("]}\n");
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\t': out.write("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.agenda.dao;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Resultado de {@link PersonDao#saveAll} y {@link PersonDao#deleteAll}: qué filas se escribieron
+ * y, para cada una que falló, su posición en la entrada y el error.
+ */
+public class BatchResult {
+    /** Una fila que no se pudo escribir. */
+    public static class Failure {
+        private final int index;
+        private final int personId;
+        private final String message;
+
+        Failure(int index, int personId, Exception error) {
+            this.index = index;
+            this.personId = personId;
+            this.message = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+        }
+
+        /** Posición en la colección o array de entrada. */
+        public int getIndex() { return index; }
+        /** Id de la persona (0 si era nueva). */
+        public int getPersonId() { return personId; }
+        public String getMessage() { return message; }
+
+        @Override
+        public String toString() {
+            return "#" + index + (personId != 0 ? " (id " + personId + ")" : "") + ": " + message;
+        }
+    }
+
+    private final int requested;
+    private final int[] ids;
+    private final List<Failure> failures;
+
+    BatchResult(int requested, int[] ids, List<Failure> failures) {
+        this.requested = requested;
+        this.ids = ids;
+        this.failures = List.copyOf(failures);
+    }
+
+    public int getRequested() { return requested; }
+    /** Ids de las personas guardadas (o borradas), en el orden de la entrada. */
+    public int[] getIds() { return ids.clone(); }
+    public int getSucceeded() { return ids.length; }
+    public List<Failure> getFailures() { return failures; }
+
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{requested=" + requested + ", succeeded=" + ids.length
+                + ", failures=" + failures + ", ids=" + Arrays.toString(ids) + "}";
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.agenda.dao;
+
+import com.example.agenda.Db;
+import com.example.agenda.metrics.Metrics;
+import com.example.agenda.model.Contact;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Cambios que otros clientes han hecho en la agenda desde la última consulta. Lee la tabla
+ * {@code Cambios} a partir del último id visto y vuelve a cargar sólo las personas afectadas, así
+ * que el coste de cada {@link #poll()} depende del número de cambios, no del tamaño de la agenda.
+ * La caché y el índice de búsqueda del {@link PersonDao} quedan al día.
+ * <p>
+ * Dos transacciones simultáneas pueden confirmar sus ids en desorden: los huecos que quedan por
+ * debajo del último id visto se vuelven a consultar durante {@code sync.gapTimeoutMs} y después se
+ * dan por vacíos (un lote deshecho deja ids que no llegan nunca). Para acotar la memoria se siguen
+ * como mucho {@link #MAX_GAPS} a la vez.
+ * <p>
+ * Cada hora se borran los cambios de más de {@code sync.retentionDays} días. Si se borraron cambios
+ * que no se llegaron a leer ya no se puede saber qué personas cambiaron: el {@link Delta} pide
+ * recargarlo todo.
+ */
+public class ChangeFeed {
+    static final int DEFAULT_BATCH_SIZE = 1000;
+    static final int MAX_GAPS = 100_000;
+    static final int DEFAULT_RETENTION_DAYS = 7;
+    static final long PRUNE_INTERVAL_MS = TimeUnit.HOURS.toMillis(1);
+    private static final Logger LOG = Logger.getLogger(ChangeFeed.class.getName());
+
+    /** Resultado de un {@link #poll()}: personas nuevas o modificadas (ya recargadas) e ids borrados. */
+    public static final class Delta {
+        private final List<Contact> updated;
+        private final int[] deleted;
+        private final boolean fullReload;
+
+        Delta(List<Contact> updated, int[] deleted) {
+            this(updated, deleted, false);
+        }
+
+        private Delta(List<Contact> updated, int[] deleted, boolean fullReload) {
+            this.updated = updated;
+            this.deleted = deleted;
+            this.fullReload = fullReload;
+        }
+
+        public List<Contact> getUpdated() { return updated; }
+        public int[] getDeleted() { return deleted.clone(); }
+
+        /** Se perdieron cambios: hay que volver a leer todas las personas (la caché del DAO ya está vacía). */
+        public boolean isFullReload() { return fullReload; }
+
+        public boolean isEmpty() {
+            return !fullReload && updated.isEmpty() && deleted.length == 0;
+        }
+    }
+
+    private static final Delta EMPTY = new Delta(List.of(), new int[0]);
+    private static final Delta FULL_RELOAD = new Delta(List.of(), new int[0], true);
+
+    private final PersonDao dao;
+    private final int batchSize;
+    private final long gapTimeoutNanos;
+    private final long retentionMs;
+    private long cursor = -1;
+    private long lastPrune;
+    // Última lectura completa (reloj del sistema)
+    private long lastRead;
+    // Ids sin confirmar por debajo del cursor -> cuándo se vieron por primera vez
+    private final Map<Long, Long> gaps = new TreeMap<>();
+
+    public ChangeFeed(PersonDao dao) {
+        // Con copia local, Cambios es también la bandeja de salida: la poda LocalSync sin tocar lo pendiente
+        this(dao, Db.getInt("sync.batchSize", DEFAULT_BATCH_SIZE), Db.getInt("sync.gapTimeoutMs", 60_000),
+                Db.getString("db.local.url", "").isEmpty() ? Db.getInt("sync.retentionDays", DEFAULT_RETENTION_DAYS) : 0);
+    }
+
+    public ChangeFeed(PersonDao dao, int batchSize, long gapTimeoutMs) {
+        this(dao, batchSize, gapTimeoutMs, 0);
+    }
+
+    /** {@code retentionDays} = 0: no se borra nada de {@code Cambios}. */
+    public ChangeFeed(PersonDao dao, int batchSize, long gapTimeoutMs, int retentionDays) {
+        this.dao = dao;
+        this.batchSize = batchSize;
+        this.gapTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(gapTimeoutMs);
+        this.retentionMs = TimeUnit.DAYS.toMillis(retentionDays);
+    }
+
+    /**
+     * La primera vez fija el punto de partida en el último cambio registrado: lo anterior ya está en
+     * los datos que se lean a continuación. Las llamadas siguientes no hacen nada.
+     */
+    public synchronized void start() throws SQLException {
+        if (cursor >= 0) {
+            return;
+        }
+        // Del primario, como todo el seguimiento: una réplica retrasada haría saltarse cambios
+        try (Connection con = Db.getConnection()) {
+            cursor = ChangeLog.lastId(con);
+        }
+        lastRead = System.currentTimeMillis();
+    }
+
+    public synchronized long getCursor() {
+        return cursor;
+    }
+
+    /** Ids sin confirmar por debajo del cursor que aún se esperan. */
+    synchronized int getGapCount() {
+        return gaps.size();
+    }
+
+    /**
+     * Cambios de otros clientes desde la llamada anterior (como mucho {@code sync.batchSize}; el resto
+     * llega en la siguiente). Si el feed no se había iniciado, lo inicia y no devuelve nada.
+     */
+    public synchronized Delta poll() throws SQLException {
+        if (cursor < 0) {
+            start();
+            return EMPTY;
+        }
+        pruneIfDue();
+        return Metrics.measure("sync.poll", cursor, d -> d.getUpdated().size() + d.deleted.length, () -> {
+            long now = System.nanoTime();
+            gaps.values().removeIf(seen -> now - seen > gapTimeoutNanos);
+            String origin = dao.getOrigin();
+            Set<Integer> touched = new LinkedHashSet<>();
+            long next = cursor;
+            Map<Long, Long> found = new TreeMap<>();
+            Set<Long> filled = new HashSet<>();
+            long firstNew = -1;
+            boolean capped = false;
+            try (Connection con = Db.getConnection()) {
+                try (PreparedStatement ps = con.prepareStatement(
+                        "SELECT id, personaId, origen FROM Cambios WHERE id > ? ORDER BY id LIMIT ?")) {
+                    ps.setLong(1, cursor);
+                    ps.setInt(2, batchSize);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            long id = rs.getLong(1);
+                            if (firstNew < 0) firstNew = id;
+                            for (long g = next + 1; g < id; g++) {
+                                if (gaps.size() + found.size() >= MAX_GAPS) {
+                                    capped = true;
+                                    break;
+                                }
+                                found.put(g, now);
+                            }
+                            next = id;
+                            if (!origin.equals(rs.getString(3))) touched.add(rs.getInt(2));
+                        }
+                    }
+                }
+                if (capped) {
+                    LOG.warning("Más de " + MAX_GAPS + " cambios sin confirmar; los que falten hasta el " + next
+                            + " se dan por vacíos");
+                }
+                if (firstNew > cursor + 1 && mayHaveMissedPrune() && ChangeLog.prunedAfter(con, cursor)) {
+                    LOG.warning("Los cambios posteriores al " + cursor + " ya se borraron de Cambios"
+                            + " (sync.retentionDays); se recargan todas las personas");
+                    return fullReload(con);
+                }
+                List<Long> open = new ArrayList<>(gaps.keySet());
+                for (int from = 0; from < open.size(); from += batchSize) {
+                    List<Long> chunk = open.subList(from, Math.min(from + batchSize, open.size()));
+                    try (PreparedStatement ps = con.prepareStatement("SELECT id, personaId, origen FROM Cambios WHERE id IN ("
+                            + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")")) {
+                        int i = 1;
+                        for (long gap : chunk) ps.setLong(i++, gap);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                filled.add(rs.getLong(1));
+                                if (!origin.equals(rs.getString(3))) touched.add(rs.getInt(2));
+                            }
+                        }
+                    }
+                }
+            }
+            if (touched.isEmpty()) {
+                advance(next, filled, found);
+                return EMPTY;
+            }
+            int[] ids = touched.stream().mapToInt(Integer::intValue).toArray();
+            List<Contact> updated = dao.reload(ids);
+            Set<Integer> present = new HashSet<>();
+            updated.forEach(c -> present.add(c.getId()));
+            int[] deleted = touched.stream().filter(id -> !present.contains(id)).mapToInt(Integer::intValue).toArray();
+            // El cursor sólo avanza cuando los cambios ya están aplicados
+            advance(next, filled, found);
+            return new Delta(updated, deleted);
+        });
+    }
+
+    // Se sigue desde el último cambio: lo anterior queda en los datos que se vuelvan a leer
+    private Delta fullReload(Connection con) throws SQLException {
+        cursor = ChangeLog.lastId(con);
+        lastRead = System.currentTimeMillis();
+        gaps.clear();
+        dao.reloadAll();
+        return FULL_RELOAD;
+    }
+
+    // Como mucho una vez por PRUNE_INTERVAL_MS; si falla se intenta en la siguiente hora
+    private void pruneIfDue() {
+        long now = System.currentTimeMillis();
+        if (retentionMs <= 0 || now - lastPrune < PRUNE_INTERVAL_MS) {
+            return;
+        }
+        lastPrune = now;
+        try (Connection con = Db.getConnection()) {
+            Metrics.measure("sync.prune", null, n -> n, () -> ChangeLog.prune(con, retentionMs, Long.MAX_VALUE));
+        } catch (SQLException e) {
+            LOG.warning("No se pudieron borrar los cambios antiguos de Cambios: " + e.getMessage());
+        }
+    }
+
+    // Sólo se podan filas de más de retentionMs: quien ha leído hace menos ya vio las que faltan (con margen
+    // para el desfase entre relojes). Así un hueco de ids deshechos no se confunde con una poda
+    private boolean mayHaveMissedPrune() {
+        return retentionMs > 0 && System.currentTimeMillis() - lastRead > retentionMs / 2;
+    }
+
+    private void advance(long next, Set<Long> filled, Map<Long, Long> newGaps) {
+        cursor = next;
+        lastRead = System.currentTimeMillis();
+        gaps.keySet().removeAll(filled);
+        gaps.putAll(newGaps);
+    }
+}
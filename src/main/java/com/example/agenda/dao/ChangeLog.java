@@ -0,0 +1,80 @@
+package com.example.agenda.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.UUID;
+
+/**
+ * Anota cada escritura en la tabla {@code Cambios}, en la misma transacción que el cambio, para
+ * que los demás clientes la lean con {@link ChangeFeed}. El origen identifica a quien escribe,
+ * que así puede saltarse sus propios cambios.
+ * <p>
+ * Las filas antiguas se borran con {@link #prune}; la más reciente se conserva siempre, así que un
+ * cliente que vuelve tras mucho tiempo ve con {@link #prunedAfter} que le faltan cambios.
+ */
+public final class ChangeLog {
+    private static final String SQL = "INSERT INTO Cambios (personaId, version, borrado, origen) VALUES (?, ?, ?, ?)";
+
+    private ChangeLog() {
+    }
+
+    public static String newOrigin() {
+        return UUID.randomUUID().toString();
+    }
+
+    /** En una baja, {@code version} es la que tenía la persona (0 si se borró sin comprobarla). */
+    public static void record(Connection con, String origin, int personId, int version, boolean deleted)
+            throws SQLException {
+        recordAll(con, origin, new int[]{personId}, new int[]{version}, deleted);
+    }
+
+    /** Una fila por persona; {@code versions} puede ser {@code null} si todas tienen la versión 0 (altas). */
+    public static void recordAll(Connection con, String origin, int[] ids, int[] versions, boolean deleted)
+            throws SQLException {
+        if (ids.length == 0) {
+            return;
+        }
+        try (PreparedStatement ps = con.prepareStatement(SQL)) {
+            for (int i = 0; i < ids.length; i++) {
+                ps.setInt(1, ids[i]);
+                ps.setInt(2, versions == null ? 0 : versions[i]);
+                ps.setBoolean(3, deleted);
+                ps.setString(4, origin);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /** Id del último cambio anotado (0 si no hay ninguno). */
+    public static long lastId(Connection con) throws SQLException {
+        try (Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COALESCE(MAX(id), 0) FROM Cambios")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Borra los cambios anotados hace más de {@code retentionMs} con id menor que {@code belowId}
+     * ({@link Long#MAX_VALUE} = sin límite), salvo el último. Devuelve cuántos se borraron.
+     */
+    public static int prune(Connection con, long retentionMs, long belowId) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("DELETE FROM Cambios WHERE fecha < ? AND id < ?")) {
+            ps.setTimestamp(1, new Timestamp(System.currentTimeMillis() - retentionMs));
+            ps.setLong(2, Math.min(lastId(con), belowId));
+            return ps.executeUpdate();
+        }
+    }
+
+    /** {@code true} si ya no están todos los cambios posteriores a {@code cursor}: se podaron sin leerlos. */
+    public static boolean prunedAfter(Connection con, long cursor) throws SQLException {
+        try (Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT MIN(id) FROM Cambios")) {
+            return rs.next() && rs.getLong(1) > cursor + 1;
+        }
+    }
+}
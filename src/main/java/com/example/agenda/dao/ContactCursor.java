@@ -0,0 +1,128 @@
+package com.example.agenda.dao;
+
+import com.example.agenda.metrics.Metrics;
+import com.example.agenda.model.Contact;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Recorre un {@code ResultSet} de sólo avance y sólo lectura (persona LEFT JOIN teléfonos,
+ * ordenado por persona) agrupando las filas de cada persona en un {@link Contact}.
+ * Mantiene abiertos la conexión, la sentencia y el resultado hasta {@link #close()}, que
+ * también se llama al llegar al final.
+ */
+final class ContactCursor implements Iterator<Contact>, AutoCloseable {
+    private final Connection con;
+    private final PreparedStatement ps;
+    private final ResultSet rs;
+    private final Object detail;
+    private final long start = System.nanoTime();
+    private long rows;
+    private boolean closed;
+
+    // Primera fila de la siguiente persona, ya leída del ResultSet
+    private boolean pending;
+    private Contact next;
+
+    ContactCursor(Connection con, String sql, int fetchSize, Object detail, Object... params) throws SQLException {
+        this.con = con;
+        this.detail = detail;
+        try {
+            ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            rs = ps.executeQuery();
+            pending = rs.next();
+        } catch (SQLException e) {
+            con.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null && !closed) {
+            try {
+                next = read();
+            } catch (SQLException e) {
+                fail(e);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public Contact next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Contact c = next;
+        next = null;
+        rows++;
+        return c;
+    }
+
+    private Contact read() throws SQLException {
+        if (!pending) {
+            close();
+            return null;
+        }
+        int id = rs.getInt(1);
+        String nombre = rs.getString(2);
+        String direccion = rs.getString(3);
+        int version = rs.getInt(4);
+        List<String> phones = new ArrayList<>(2);
+        do {
+            String telefono = rs.getString(5);
+            if (telefono != null) phones.add(telefono);
+            pending = rs.next();
+        } while (pending && rs.getInt(1) == id);
+        return new Contact(id, nombre, direccion, phones, version);
+    }
+
+    private void fail(SQLException e) {
+        if (!closed) {
+            closed = true;
+            Metrics.operation("dao.stream").recordError(System.nanoTime() - start, detail, e);
+            try {
+                con.close();
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+        }
+        throw new UncheckedSQLException(e);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        next = null;
+        Metrics.operation("dao.stream").record(System.nanoTime() - start, rows, detail);
+        // En orden inverso al de apertura; la conexión vuelve al pool aunque falle lo anterior
+        try {
+            try {
+                rs.close();
+            } finally {
+                try {
+                    ps.close();
+                } finally {
+                    con.close();
+                }
+            }
+        } catch (SQLException e) {
+            throw new UncheckedSQLException(e);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.agenda.dao;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Mapa {@code long -> int[]} de direccionamiento abierto (sondeo lineal) sobre arrays primitivos: una
+ * búsqueda es un hash y unas pocas comparaciones de {@code long}, sin objetos por clave. Acotado: al
+ * llegar a {@code capacity} claves se vacía. Seguro entre hilos. Los arrays guardados no se copian.
+ */
+final class LongIntsMap {
+    private static final long FREE = Long.MIN_VALUE;
+
+    private final int capacity;
+    private final int mask;
+    private final long[] keys;
+    private final int[][] values;
+    private int size;
+    private long hits;
+    private long misses;
+
+    LongIntsMap(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity debe ser positiva: " + capacity);
+        }
+        this.capacity = capacity;
+        // Ocupación de como mucho el 50 %: las cadenas de sondeo se mantienen cortas
+        int slots = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+        this.mask = slots - 1;
+        this.keys = new long[slots];
+        this.values = new int[slots][];
+        Arrays.fill(keys, FREE);
+    }
+
+    synchronized int[] get(long key) {
+        for (int i = slot(key); keys[i] != FREE; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                hits++;
+                return values[i];
+            }
+        }
+        misses++;
+        return null;
+    }
+
+    synchronized void put(long key, int[] ids) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Clave no admitida: " + key);
+        }
+        int i = slot(key);
+        for (; keys[i] != FREE; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                values[i] = ids;
+                return;
+            }
+        }
+        if (size >= capacity) {
+            clear();
+            i = slot(key);
+        }
+        keys[i] = key;
+        values[i] = ids;
+        size++;
+    }
+
+    synchronized void remove(long key) {
+        for (int i = slot(key); keys[i] != FREE; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                delete(i);
+                return;
+            }
+        }
+    }
+
+    /** Quita las claves cuyo valor contiene alguno de {@code ids}. */
+    synchronized void removeValues(Set<Integer> ids) {
+        if (ids.isEmpty() || size == 0) {
+            return;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            while (keys[i] != FREE && containsAny(values[i], ids)) {
+                // El borrado puede traer a esta posición otra clave: se vuelve a mirar
+                delete(i);
+            }
+        }
+    }
+
+    synchronized void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    // Borrado sin marcas: se adelantan las claves siguientes de la cadena que no quedarían accesibles
+    private void delete(int hole) {
+        int i = hole;
+        for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            boolean movable = i <= j ? home <= i || home > j : home <= i && home > j;
+            if (movable) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = FREE;
+        values[i] = null;
+        size--;
+    }
+
+    private static boolean containsAny(int[] values, Set<Integer> ids) {
+        for (int v : values) {
+            if (ids.contains(v)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.agenda.dao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Caché acotada con expulsión LRU y contadores de aciertos. Segura entre hilos.
+ */
+public class LruCache<K, V> {
+    private final int capacity;
+    private final LinkedHashMap<K, V> map;
+    private long hits;
+    private long misses;
+
+    public LruCache(int capacity) {
+        this(capacity, null);
+    }
+
+    /** {@code onEvict} se llama (con el cerrojo tomado) para cada entrada expulsada por tamaño. */
+    public LruCache(int capacity, BiConsumer<K, V> onEvict) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity debe ser positiva: " + capacity);
+        }
+        this.capacity = capacity;
+        this.map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > LruCache.this.capacity) {
+                    if (onEvict != null) onEvict.accept(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        V value = map.get(key);
+        if (value != null) hits++; else misses++;
+        return value;
+    }
+
+    /** Como {@link #get(Object)} pero sin contar el acierto o fallo. */
+    public synchronized V peek(K key) {
+        return map.get(key);
+    }
+
+    public synchronized void put(K key, V value) {
+        map.put(key, value);
+    }
+
+    public synchronized V remove(K key) {
+        return map.remove(key);
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized double hitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.agenda.dao;
+
+import com.example.agenda.model.Contact;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Caché de contactos por id que {@link PersonDao} mantiene al día en cada escritura
+ * (write-through). Los {@link Contact} son inmutables, así que se comparten sin copiarlos.
+ */
+public class PersonCache {
+    public static final int DEFAULT_SIZE = 10_000;
+
+    private final LruCache<Integer, Contact> entries;
+
+    public PersonCache() {
+        this(DEFAULT_SIZE);
+    }
+
+    public PersonCache(int capacity) {
+        this.entries = new LruCache<>(capacity);
+    }
+
+    public Contact get(int id) {
+        return entries.get(id);
+    }
+
+    public synchronized void put(Contact c) {
+        entries.put(c.getId(), c);
+    }
+
+    public synchronized void remove(int id) {
+        entries.remove(id);
+    }
+
+    public synchronized void addTelefono(int id, String telefono, int version) {
+        Contact c = entries.peek(id);
+        if (c != null) {
+            List<String> telefonos = new ArrayList<>(c.getTelefonos());
+            telefonos.add(telefono);
+            entries.put(id, new Contact(id, c.getNombre(), c.getDireccion(), telefonos, version));
+        }
+    }
+
+    public synchronized void removeTelefono(int id, String telefono, int version) {
+        Contact c = entries.peek(id);
+        if (c != null) {
+            List<String> telefonos = new ArrayList<>(c.getTelefonos());
+            telefonos.removeIf(telefono::equals);
+            entries.put(id, new Contact(id, c.getNombre(), c.getDireccion(), telefonos, version));
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public double hitRatio() {
+        return entries.hitRatio();
+    }
+}
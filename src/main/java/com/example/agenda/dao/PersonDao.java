@@ -1,38 +1,754 @@
 package com.example.agenda.dao;
 
 import com.example.agenda.Db;
+import com.example.agenda.metrics.Metrics;
+import com.example.agenda.model.Contact;
 import com.example.agenda.model.Person;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class PersonDao {
 
+    static final int DEFAULT_BATCH_SIZE = 500;
+    static final int DEFAULT_QUERY_CACHE_SIZE = 64;
+    static final int DEFAULT_FETCH_SIZE = 1000;
+    static final int DEFAULT_PHONE_CACHE_SIZE = 10_000;
+
+    /** Recibe cada persona con sus teléfonos durante {@link #scanAll(RowVisitor)}. */
+    @FunctionalInterface
+    public interface RowVisitor {
+        void visit(int id, String nombre, String direccion, List<String> telefonos);
+    }
+
+    private final PhoneFetchStrategy fetchStrategy;
+    private final int batchSize;
+    private SearchIndex searchIndex;
+    // Texto normalizado -> ids; se vacía en cada escritura
+    private final LruCache<String, int[]> queryCache =
+            new LruCache<>(Db.getInt("search.cacheSize", DEFAULT_QUERY_CACHE_SIZE));
+    private final AtomicLong writes = new AtomicLong();
+    private final PersonCache personCache = new PersonCache(Db.getInt("cache.persons.size", PersonCache.DEFAULT_SIZE));
+    // Número canónico -> ids de sus dueños (también los números sin dueño, con un array vacío)
+    private final LongIntsMap phoneCache = new LongIntsMap(Db.getInt("telefonos.cacheSize", DEFAULT_PHONE_CACHE_SIZE));
+    private final AtomicLong phoneWrites = new AtomicLong();
+    private final String origin = ChangeLog.newOrigin();
+
+    public PersonDao() {
+        this(PhoneFetchStrategy.JOIN);
+    }
+
+    public PersonDao(PhoneFetchStrategy fetchStrategy) {
+        this(fetchStrategy, DEFAULT_BATCH_SIZE);
+    }
+
+    public PersonDao(PhoneFetchStrategy fetchStrategy, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize debe ser positivo: " + batchSize);
+        }
+        this.fetchStrategy = fetchStrategy;
+        this.batchSize = batchSize;
+    }
+
+    public PhoneFetchStrategy getFetchStrategy() {
+        return fetchStrategy;
+    }
+
+    public SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /** Índice que este DAO mantiene al día en cada escritura y usa en {@link #search(String)}. */
+    public void setSearchIndex(SearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+        queryCache.clear();
+    }
+
+    public LruCache<String, int[]> getQueryCache() {
+        return queryCache;
+    }
+
+    public PersonCache getPersonCache() {
+        return personCache;
+    }
+
+    /** Identifica las escrituras de este DAO en la tabla {@code Cambios}; {@link ChangeFeed} se las salta. */
+    public String getOrigin() {
+        return origin;
+    }
+
+    /** Recarga el índice de búsqueda desde la base de datos y descarta las búsquedas en caché. */
+    public void rebuildSearchIndex() throws SQLException {
+        Metrics.measure("searchIndex.rebuild", null, null, () -> {
+            searchIndex.rebuild(this);
+            invalidateQueries();
+            return null;
+        });
+    }
+
     public ObservableList<Person> findAll(String nameLike) throws SQLException {
-        String sql = "SELECT p.id, p.nombre, p.direccion FROM Personas p "
-                   + (nameLike != null && !nameLike.isBlank() ? "WHERE p.nombre LIKE ? " : "")
+        return toPersons(findContacts(nameLike));
+    }
+
+    /** Como {@link #findAll(String)}, sin crear objetos JavaFX. */
+    public List<Contact> findContacts(String nameLike) throws SQLException {
+        return Metrics.measure("dao.findContacts", Metrics.redact(nameLike), List::size, () -> {
+            boolean filtered = nameLike != null && !nameLike.isBlank();
+            String sql = "SELECT p.id, p.nombre, p.direccion, p.version FROM Personas p "
+                       + (filtered ? "WHERE p.nombre LIKE ? " : "")
+                       + "ORDER BY p.id";
+            try (Connection con = Db.getReadConnection()) {
+                return query(con, sql, filtered ? new Object[]{"%" + nameLike + "%"} : new Object[0]);
+            }
+        });
+    }
+
+    /**
+     * Página de personas con id mayor que {@code afterId} (paginación por clave),
+     * con sus teléfonos cargados según la estrategia del DAO.
+     */
+    public ObservableList<Person> findPage(int afterId, int limit, String nameLike) throws SQLException {
+        return toPersons(findContactPage(afterId, limit, nameLike));
+    }
+
+    /** Como {@link #findPage(int, int, String)}, sin crear objetos JavaFX. */
+    public List<Contact> findContactPage(int afterId, int limit, String nameLike) throws SQLException {
+        return Metrics.measure("dao.findContactPage", Metrics.redact(nameLike), List::size, () -> {
+            boolean filtered = nameLike != null && !nameLike.isBlank();
+            String sql = "SELECT p.id, p.nombre, p.direccion, p.version FROM Personas p WHERE p.id > ? "
+                       + (filtered ? "AND p.nombre LIKE ? " : "")
+                       + "ORDER BY p.id LIMIT ?";
+            try (Connection con = Db.getReadConnection()) {
+                List<Contact> page = query(con, sql, filtered
+                        ? new Object[]{afterId, "%" + nameLike + "%", limit}
+                        : new Object[]{afterId, limit});
+                page.forEach(personCache::put);
+                return page;
+            }
+        });
+    }
+
+    /**
+     * Como {@link #findContactPage(int, int, String)}, pero en resúmenes ({@link Contact#summary}):
+     * en lugar de los teléfonos, cuántos tiene cada persona, con un único {@code COUNT} agrupado para
+     * toda la página. Es lo que necesita una fila de la tabla; los resúmenes no entran en la caché.
+     */
+    public List<Contact> findSummaryPage(int afterId, int limit, String nameLike) throws SQLException {
+        return Metrics.measure("dao.findSummaryPage", Metrics.redact(nameLike), List::size, () -> {
+            boolean filtered = nameLike != null && !nameLike.isBlank();
+            String sql = "SELECT p.id, p.nombre, p.direccion, p.version FROM Personas p WHERE p.id > ? "
+                       + (filtered ? "AND p.nombre LIKE ? " : "")
+                       + "ORDER BY p.id LIMIT ?";
+            try (Connection con = Db.getReadConnection()) {
+                return withCounts(con, queryPersons(con, sql, filtered
+                        ? new Object[]{afterId, "%" + nameLike + "%", limit}
+                        : new Object[]{afterId, limit}));
+            }
+        });
+    }
+
+    /**
+     * Resúmenes de las personas {@code ids}, en el mismo orden y omitiendo las inexistentes. Las que
+     * están en la {@link PersonCache} se devuelven completas, con sus teléfonos.
+     */
+    public List<Contact> findSummariesByIds(int[] ids) throws SQLException {
+        return Metrics.measure("dao.findSummariesByIds", null, List::size, () -> {
+            Map<Integer, Contact> byId = new HashMap<>();
+            int[] missing = new int[ids.length];
+            int misses = 0;
+            for (int id : ids) {
+                Contact cached = personCache.get(id);
+                if (cached != null) byId.put(id, cached); else missing[misses++] = id;
+            }
+            if (misses > 0) {
+                int chunk = Math.min(batchSize, misses);
+                String sql = "SELECT p.id, p.nombre, p.direccion, p.version FROM Personas p WHERE p.id IN ("
+                           + String.join(",", Collections.nCopies(chunk, "?"))
+                           + ") ORDER BY p.id";
+                List<Contact> found = new ArrayList<>(misses);
+                try (Connection con = Db.getReadConnection()) {
+                    for (int from = 0; from < misses; from += chunk) {
+                        int to = Math.min(from + chunk, misses);
+                        Object[] params = new Object[chunk];
+                        for (int i = 0; i < chunk; i++) {
+                            params[i] = missing[Math.min(from + i, to - 1)];
+                        }
+                        found.addAll(queryPersons(con, sql, params));
+                    }
+                    for (Contact c : withCounts(con, found)) {
+                        byId.put(c.getId(), c);
+                    }
+                }
+            }
+            List<Contact> list = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                Contact c = byId.get(id);
+                if (c != null) list.add(c);
+            }
+            return list;
+        });
+    }
+
+    /** Número de teléfonos de cada persona de {@code ids}, en el mismo orden. */
+    public int[] countTelefonos(int[] ids) throws SQLException {
+        try (Connection con = Db.getReadConnection()) {
+            Map<Integer, Integer> counts = countTelefonos(con, ids, ids.length);
+            int[] result = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                result[i] = counts.getOrDefault(ids[i], 0);
+            }
+            return result;
+        }
+    }
+
+    private List<Contact> withCounts(Connection con, List<Contact> persons) throws SQLException {
+        int[] ids = new int[persons.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = persons.get(i).getId();
+        }
+        Map<Integer, Integer> counts = countTelefonos(con, ids, ids.length);
+        List<Contact> list = new ArrayList<>(persons.size());
+        for (Contact c : persons) {
+            list.add(Contact.summary(c.getId(), c.getNombre(), c.getDireccion(), counts.getOrDefault(c.getId(), 0),
+                    c.getVersion()));
+        }
+        return list;
+    }
+
+    // Sólo recorre idx_telefonos_persona; las personas sin teléfonos no aparecen
+    private Map<Integer, Integer> countTelefonos(Connection con, int[] ids, int n) throws SQLException {
+        Map<Integer, Integer> counts = new HashMap<>();
+        if (n == 0) {
+            return counts;
+        }
+        int chunk = Math.min(batchSize, n);
+        String sql = "SELECT personaId, COUNT(*) FROM Telefonos WHERE personaId IN ("
+                   + String.join(",", Collections.nCopies(chunk, "?"))
+                   + ") GROUP BY personaId";
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            for (int from = 0; from < n; from += chunk) {
+                int to = Math.min(from + chunk, n);
+                for (int i = 0; i < chunk; i++) {
+                    ps.setInt(i + 1, ids[Math.min(from + i, to - 1)]);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) counts.put(rs.getInt(1), rs.getInt(2));
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Recuento y mayor id de las personas que coinciden, leídos en la misma sentencia: una persona con
+     * id mayor se creó después y no está incluida en el recuento.
+     */
+    public int[] countAndMaxId(String nameLike) throws SQLException {
+        return Metrics.measure("dao.count", Metrics.redact(nameLike), n -> 1, () -> {
+            boolean filtered = nameLike != null && !nameLike.isBlank();
+            String sql = "SELECT COUNT(*), COALESCE(MAX(p.id), 0) FROM Personas p"
+                       + (filtered ? " WHERE p.nombre LIKE ?" : "");
+            try (Connection con = Db.getReadConnection();
+                 PreparedStatement ps = con.prepareStatement(sql)) {
+                if (filtered) {
+                    ps.setString(1, "%" + nameLike + "%");
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? new int[]{rs.getInt(1), rs.getInt(2)} : new int[2];
+                }
+            }
+        });
+    }
+
+    public int count(String nameLike) throws SQLException {
+        return Metrics.measure("dao.count", Metrics.redact(nameLike), n -> 1, () -> {
+            boolean filtered = nameLike != null && !nameLike.isBlank();
+            String sql = "SELECT COUNT(*) FROM Personas p"
+                       + (filtered ? " WHERE p.nombre LIKE ?" : "");
+            try (Connection con = Db.getReadConnection();
+                 PreparedStatement ps = con.prepareStatement(sql)) {
+                if (filtered) {
+                    ps.setString(1, "%" + nameLike + "%");
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            }
+        });
+    }
+
+    /**
+     * Id de la fila número {@code offset} (1 = la siguiente) después de {@code afterId},
+     * o 0 si no hay tantas filas. Sirve para saltar páginas sin leerlas.
+     */
+    public int findIdAfter(int afterId, int offset, String nameLike) throws SQLException {
+        return Metrics.measure("dao.findIdAfter", Metrics.redact(nameLike), n -> 1, () -> {
+            boolean filtered = nameLike != null && !nameLike.isBlank();
+            String sql = "SELECT MAX(t.id) FROM (SELECT p.id FROM Personas p WHERE p.id > ? "
+                       + (filtered ? "AND p.nombre LIKE ? " : "")
+                       + "ORDER BY p.id LIMIT ?) t";
+            try (Connection con = Db.getReadConnection();
+                 PreparedStatement ps = con.prepareStatement(sql)) {
+                bind(ps, filtered
+                        ? new Object[]{afterId, "%" + nameLike + "%", offset}
+                        : new Object[]{afterId, offset});
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            }
+        });
+    }
+
+    /**
+     * Dueños del teléfono {@code telefono}, escrito de cualquier forma ({@link PhoneNumbers}), por id.
+     * Usa la columna indexada {@code Telefonos.numero}; los números consultados quedan en memoria hasta
+     * que una escritura los cambia, así que repetir la consulta no va a la base de datos. Los
+     * teléfonos guardados antes de la migración V4 no aparecen hasta {@link #backfillPhoneNumbers(int)}.
+     */
+    public List<Contact> findByPhone(String telefono) throws SQLException {
+        return Metrics.measure("dao.findByPhone", Metrics.redact(telefono), List::size, () -> {
+            long number = PhoneNumbers.normalize(telefono);
+            if (number == PhoneNumbers.NONE) {
+                return List.of();
+            }
+            int[] ids = phoneCache.get(number);
+            if (ids == null) {
+                long generation = phoneWrites.get();
+                try (Connection con = Db.getReadConnection()) {
+                    ids = phoneOwners(con, number);
+                }
+                // Una réplica retrasada aún no tendría un número recién guardado: "sin dueño" sólo se
+                // cree (y se guarda en memoria) si lo dice el primario
+                if (ids.length == 0) {
+                    try (Connection con = Db.getConnection()) {
+                        ids = phoneOwners(con, number);
+                    }
+                }
+                if (phoneWrites.get() == generation) {
+                    phoneCache.put(number, ids);
+                }
+            }
+            return ids.length == 0 ? List.of() : findContactsByIds(ids);
+        });
+    }
+
+    private static int[] phoneOwners(Connection con, long number) throws SQLException {
+        List<Integer> owners = new ArrayList<>(1);
+        try (PreparedStatement ps = con.prepareStatement(
+                "SELECT DISTINCT personaId FROM Telefonos WHERE numero=? ORDER BY personaId")) {
+            ps.setLong(1, number);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) owners.add(rs.getInt(1));
+            }
+        }
+        return owners.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Rellena {@code Telefonos.numero} en las filas que no lo tienen (las anteriores a la migración V4),
+     * por tramos de {@code batchSize} filas con una transacción cada uno. Se puede interrumpir y volver
+     * a lanzar; las filas sin forma canónica se quedan sin número. Devuelve cuántas rellenó.
+     */
+    public int backfillPhoneNumbers(int batchSize) throws SQLException {
+        return Metrics.measure("dao.backfillPhoneNumbers", null, n -> n, () -> {
+            int filled = 0;
+            int afterId = 0;
+            try (Connection con = Db.getConnection();
+                 PreparedStatement sel = con.prepareStatement(
+                         "SELECT id, telefono FROM Telefonos WHERE numero IS NULL AND id > ? ORDER BY id LIMIT ?");
+                 PreparedStatement upd = con.prepareStatement(
+                         "UPDATE Telefonos SET numero=? WHERE id=? AND numero IS NULL")) {
+                con.setAutoCommit(false);
+                while (true) {
+                    int rows = 0;
+                    sel.setInt(1, afterId);
+                    sel.setInt(2, batchSize);
+                    try (ResultSet rs = sel.executeQuery()) {
+                        while (rs.next()) {
+                            rows++;
+                            afterId = rs.getInt(1);
+                            long number = PhoneNumbers.normalize(rs.getString(2));
+                            if (number != PhoneNumbers.NONE) {
+                                upd.setLong(1, number);
+                                upd.setInt(2, afterId);
+                                upd.addBatch();
+                            }
+                        }
+                    }
+                    if (rows == 0) {
+                        break;
+                    }
+                    for (int count : upd.executeBatch()) {
+                        if (count != 0) filled++;
+                    }
+                    con.commit();
+                }
+            }
+            if (filled > 0) {
+                phoneWrites.incrementAndGet();
+                phoneCache.clear();
+            }
+            return filled;
+        });
+    }
+
+    public Person findById(int id) throws SQLException {
+        Contact c = findContact(id);
+        return c != null ? Person.of(c) : null;
+    }
+
+    /**
+     * Hasta {@code limit} personas cuyo nombre empieza por {@code prefix}, por nombre. A diferencia
+     * del filtro {@code nameLike} (que busca en cualquier posición) recorre sólo el tramo del índice
+     * {@code idx_personas_nombre} que corresponde al prefijo.
+     */
+    public List<Contact> findContactsByNamePrefix(String prefix, int limit) throws SQLException {
+        return Metrics.measure("dao.findContactsByNamePrefix", Metrics.redact(prefix), List::size, () -> {
+            String sql = "SELECT p.id, p.nombre, p.direccion, p.version FROM Personas p "
+                       + "WHERE p.nombre LIKE ? ESCAPE '!' ORDER BY p.nombre, p.id LIMIT ?";
+            String pattern = prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+            try (Connection con = Db.getReadConnection()) {
+                List<Contact> found = queryPersons(con, sql, pattern, limit);
+                loadPhonesBatched(con, found);
+                return found;
+            }
+        });
+    }
+
+    public Contact findContact(int id) throws SQLException {
+        List<Contact> found = findContactsByIds(new int[]{id});
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    public List<Person> findByIds(int[] ids) throws SQLException {
+        return toPersons(findContactsByIds(ids));
+    }
+
+    /**
+     * Personas con los ids indicados, en el mismo orden; los ids inexistentes se omiten.
+     * Las que están en la {@link PersonCache} no se consultan.
+     */
+    public List<Contact> findContactsByIds(int[] ids) throws SQLException {
+        return Metrics.measure("dao.findContactsByIds", null, List::size, () -> {
+            Map<Integer, Contact> byId = new HashMap<>();
+            int[] missing = new int[ids.length];
+            int misses = 0;
+            for (int id : ids) {
+                Contact cached = personCache.get(id);
+                if (cached != null) byId.put(id, cached); else missing[misses++] = id;
+            }
+            if (misses > 0) {
+                try (Connection con = Db.getReadConnection()) {
+                    for (Contact c : loadByIds(con, missing, misses)) {
+                        personCache.put(c);
+                        byId.put(c.getId(), c);
+                    }
+                }
+            }
+            List<Contact> list = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                Contact c = byId.get(id);
+                if (c != null) list.add(c);
+            }
+            return list;
+        });
+    }
+
+    /**
+     * Vuelve a leer del primario las personas {@code ids} (sin pasar por la caché) y pone al día la
+     * caché y el índice de búsqueda; las que ya no existen se quitan de ambos. Devuelve las que
+     * existen, por id. Lo usa {@link ChangeFeed} con los cambios de otros clientes.
+     */
+    public List<Contact> reload(int[] ids) throws SQLException {
+        return Metrics.measure("dao.reload", null, List::size, () -> {
+            List<Contact> found;
+            try (Connection con = Db.getConnection()) {
+                found = loadByIds(con, ids, ids.length);
+            }
+            Set<Integer> present = new HashSet<>();
+            for (Contact c : found) {
+                present.add(c.getId());
+                personCache.put(c);
+                if (searchIndex != null) {
+                    searchIndex.put(c.getId(), c.getNombre(), c.getDireccion(), c.getTelefonos());
+                }
+            }
+            for (int id : ids) {
+                if (!present.contains(id)) {
+                    personCache.remove(id);
+                    if (searchIndex != null) searchIndex.remove(id);
+                }
+            }
+            if (ids.length > 0) {
+                invalidateQueries();
+                phonesChanged(ids, found);
+            }
+            return found;
+        });
+    }
+
+    /**
+     * Olvida todo lo que hay en memoria (caché de personas, de números y de búsquedas) y reconstruye
+     * el índice de búsqueda si estaba cargado. Para cuando ya no se sabe qué personas cambiaron.
+     */
+    public void reloadAll() throws SQLException {
+        personCache.clear();
+        phoneWrites.incrementAndGet();
+        phoneCache.clear();
+        if (searchIndex != null && searchIndex.isReady()) {
+            rebuildSearchIndex();
+        } else {
+            invalidateQueries();
+        }
+    }
+
+    // Las n primeras personas de ids, por id, en consultas de hasta batchSize ids
+    private List<Contact> loadByIds(Connection con, int[] ids, int n) throws SQLException {
+        List<Contact> found = new ArrayList<>(n);
+        if (n == 0) {
+            return found;
+        }
+        int chunk = Math.min(batchSize, n);
+        String sql = "SELECT p.id, p.nombre, p.direccion, p.version FROM Personas p WHERE p.id IN ("
+                   + String.join(",", Collections.nCopies(chunk, "?"))
+                   + ") ORDER BY p.id";
+        for (int from = 0; from < n; from += chunk) {
+            int to = Math.min(from + chunk, n);
+            Object[] params = new Object[chunk];
+            for (int i = 0; i < chunk; i++) {
+                params[i] = ids[Math.min(from + i, to - 1)];
+            }
+            found.addAll(query(con, sql, params));
+        }
+        return found;
+    }
+
+    /**
+     * Ids de las personas cuyo nombre, dirección o teléfono contiene {@code text}. Usa el
+     * {@link SearchIndex} si está cargado (ordenados por relevancia) y, si no, la base de datos
+     * (ordenados por id). Los resultados recientes se guardan en caché hasta la siguiente escritura,
+     * y con el índice cargado una consulta más larga se refina en memoria a partir de la de su prefijo.
+     * Los arrays devueltos son compartidos: no deben modificarse.
+     */
+    public int[] search(String text) throws SQLException {
+        return Metrics.measure("dao.search", Metrics.redact(text), ids -> ids.length, () -> {
+            String key = SearchIndex.normalize(text);
+            int[] cached = queryCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            long generation = writes.get();
+            SearchIndex index = searchIndex;
+            int[] ids;
+            if (index != null && index.isReady()) {
+                ids = index.search(key, cachedPrefixResult(key));
+            } else {
+                ids = searchDb(text);
+            }
+            // Si hubo una escritura mientras se buscaba, el resultado puede estar ya obsoleto
+            if (writes.get() == generation) {
+                queryCache.put(key, ids);
+            }
+            return ids;
+        });
+    }
+
+    private int[] cachedPrefixResult(String key) {
+        // "+" no tiene forma de teléfono y "+34" sí: los resultados del primero no contienen los del segundo
+        boolean phoneLike = SearchIndex.isPhoneLike(key);
+        for (int len = key.length() - 1; len > 0; len--) {
+            String prefix = key.substring(0, len);
+            int[] ids = SearchIndex.isPhoneLike(prefix) == phoneLike ? queryCache.peek(prefix) : null;
+            if (ids != null) {
+                // El índice espera los candidatos ordenados por id
+                int[] sorted = ids.clone();
+                Arrays.sort(sorted);
+                return sorted;
+            }
+        }
+        return null;
+    }
+
+    private int[] searchDb(String text) throws SQLException {
+        String sql = "SELECT DISTINCT p.id FROM Personas p "
+                   + "LEFT JOIN Telefonos t ON t.personaId = p.id "
+                   + "WHERE p.nombre LIKE ? OR p.direccion LIKE ? OR t.telefono LIKE ? "
                    + "ORDER BY p.id";
-        try (Connection con = Db.getConnection();
+        String pattern = "%" + text.trim() + "%";
+        try (Connection con = Db.getReadConnection();
              PreparedStatement ps = con.prepareStatement(sql)) {
+            bind(ps, pattern, pattern, pattern);
+            try (ResultSet rs = ps.executeQuery()) {
+                int[] ids = new int[64];
+                int n = 0;
+                while (rs.next()) {
+                    if (n == ids.length) ids = Arrays.copyOf(ids, n * 2);
+                    ids[n++] = rs.getInt(1);
+                }
+                return Arrays.copyOf(ids, n);
+            }
+        }
+    }
+
+    /**
+     * Todas las personas (o las que coinciden con {@code nameLike}) con sus teléfonos, por id, leídas
+     * a medida que se consume el stream con un {@code ResultSet} de sólo avance. La memoria no depende
+     * del tamaño de la tabla. El stream tiene una conexión del pool hasta que se cierra (o se llega al
+     * final), así que debe usarse en un try-with-resources. Los errores de lectura llegan como
+     * {@link UncheckedSQLException}.
+     */
+    public Stream<Contact> stream(String nameLike) throws SQLException {
+        return stream(nameLike, Db.getInt("db.fetchSize", DEFAULT_FETCH_SIZE));
+    }
 
-            if (nameLike != null && !nameLike.isBlank()) {
-                ps.setString(1, "%" + nameLike + "%");
+    /**
+     * Como {@link #stream(String)} con {@code fetchSize} filas por viaje al servidor. Con MariaDB un valor
+     * positivo activa la lectura en streaming; H2 ya ejecuta las consultas de forma perezosa.
+     */
+    public Stream<Contact> stream(String nameLike, int fetchSize) throws SQLException {
+        boolean filtered = nameLike != null && !nameLike.isBlank();
+        String sql = "SELECT p.id, p.nombre, p.direccion, p.version, t.telefono FROM Personas p "
+                   + "LEFT JOIN Telefonos t ON t.personaId = p.id "
+                   + (filtered ? "WHERE p.nombre LIKE ? " : "")
+                   + "ORDER BY p.id, t.id";
+        ContactCursor cursor = new ContactCursor(Db.getReadConnection(), sql, fetchSize, nameLike,
+                filtered ? new Object[]{"%" + nameLike + "%"} : new Object[0]);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor,
+                        Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false)
+                .onClose(cursor::close);
+    }
+
+    /** Recorre todas las personas con sus teléfonos en una sola consulta, sin cargarlas todas en memoria. */
+    public void scanAll(RowVisitor visitor) throws SQLException {
+        try (Stream<Contact> contacts = stream(null)) {
+            contacts.forEach(c -> visitor.visit(c.getId(), c.getNombre(), c.getDireccion(), c.getTelefonos()));
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        }
+    }
+
+    private List<Contact> query(Connection con, String personSql, Object... params) throws SQLException {
+        switch (fetchStrategy) {
+            case JOIN:
+                return queryJoined(con, personSql, params);
+            case BATCHED:
+                List<Contact> list = queryPersons(con, personSql, params);
+                loadPhonesBatched(con, list);
+                return list;
+            default:
+                List<Contact> perPerson = queryPersons(con, personSql, params);
+                for (int i = 0; i < perPerson.size(); i++) {
+                    Contact c = perPerson.get(i);
+                    perPerson.set(i, c.withTelefonos(loadPhones(con, c.getId())));
+                }
+                return perPerson;
+        }
+    }
+
+    /** Personas sin teléfonos; la estrategia de carga los añade después. */
+    private List<Contact> queryPersons(Connection con, String sql, Object... params) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            bind(ps, params);
+            try (ResultSet rs = ps.executeQuery()) {
+                List<Contact> list = new ArrayList<>();
+                while (rs.next()) {
+                    list.add(new Contact(rs.getInt("id"), rs.getString("nombre"), rs.getString("direccion"), List.of(),
+                            rs.getInt("version")));
+                }
+                return list;
             }
+        }
+    }
+
+    private List<Contact> queryJoined(Connection con, String personSql, Object... params) throws SQLException {
+        String sql = "SELECT p.id, p.nombre, p.direccion, p.version, t.telefono FROM (" + personSql + ") p "
+                   + "LEFT JOIN Telefonos t ON t.personaId = p.id "
+                   + "ORDER BY p.id, t.id";
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            bind(ps, params);
             try (ResultSet rs = ps.executeQuery()) {
-                ObservableList<Person> list = FXCollections.observableArrayList();
+                List<Contact> list = new ArrayList<>();
+                int currentId = 0;
+                String nombre = null;
+                String direccion = null;
+                int version = 0;
+                List<String> phones = new ArrayList<>();
                 while (rs.next()) {
-                    Person p = new Person(rs.getInt("id"), rs.getString("nombre"), rs.getString("direccion"));
-                    p.getTelefonos().setAll(loadPhones(con, p.getId()));
-                    list.add(p);
+                    int id = rs.getInt("id");
+                    if (id != currentId) {
+                        if (currentId != 0) list.add(new Contact(currentId, nombre, direccion, phones, version));
+                        currentId = id;
+                        nombre = rs.getString("nombre");
+                        direccion = rs.getString("direccion");
+                        version = rs.getInt("version");
+                        phones.clear();
+                    }
+                    String telefono = rs.getString("telefono");
+                    if (telefono != null) phones.add(telefono);
                 }
+                if (currentId != 0) list.add(new Contact(currentId, nombre, direccion, phones, version));
                 return list;
             }
         }
     }
 
+    private static ObservableList<Person> toPersons(List<Contact> contacts) {
+        List<Person> persons = new ArrayList<>(contacts.size());
+        for (Contact c : contacts) {
+            persons.add(Person.of(c));
+        }
+        return FXCollections.observableList(persons);
+    }
+
+    private static void bind(PreparedStatement ps, Object... params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            ps.setObject(i + 1, params[i]);
+        }
+    }
+
+    private void loadPhonesBatched(Connection con, List<Contact> persons) throws SQLException {
+        if (persons.isEmpty()) return;
+        int chunk = Math.min(batchSize, persons.size());
+        // Siempre el mismo número de parámetros: el último lote se rellena repitiendo el último id
+        String sql = "SELECT personaId, telefono FROM Telefonos WHERE personaId IN ("
+                   + String.join(",", Collections.nCopies(chunk, "?"))
+                   + ") ORDER BY personaId, id";
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            for (int from = 0; from < persons.size(); from += chunk) {
+                int to = Math.min(from + chunk, persons.size());
+                Map<Integer, List<String>> phones = new HashMap<>();
+                for (int i = 0; i < chunk; i++) {
+                    ps.setInt(i + 1, persons.get(Math.min(from + i, to - 1)).getId());
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        phones.computeIfAbsent(rs.getInt(1), k -> new ArrayList<>()).add(rs.getString(2));
+                    }
+                }
+                for (int i = from; i < to; i++) {
+                    Contact c = persons.get(i);
+                    persons.set(i, c.withTelefonos(phones.getOrDefault(c.getId(), List.of())));
+                }
+            }
+        }
+    }
+
     private List<String> loadPhones(Connection con, int personId) throws SQLException {
         String sql = "SELECT telefono FROM Telefonos WHERE personaId = ? ORDER BY id";
         try (PreparedStatement ps = con.prepareStatement(sql)) {
@@ -46,66 +762,574 @@ public class PersonDao {
     }
 
     public Person insert(Person p) throws SQLException {
-        String sqlP = "INSERT INTO Personas (nombre, direccion) VALUES (?, ?)";
-        String sqlT = "INSERT INTO Telefonos (personaId, telefono) VALUES (?, ?)";
-        try (Connection con = Db.getConnection()) {
-            con.setAutoCommit(false);
-            try (PreparedStatement ps = con.prepareStatement(sqlP, Statement.RETURN_GENERATED_KEYS)) {
-                ps.setString(1, p.getNombre());
-                ps.setString(2, p.getDireccion());
-                ps.executeUpdate();
-                try (ResultSet keys = ps.getGeneratedKeys()) {
-                    if (keys.next()) p.setId(keys.getInt(1));
+        return Metrics.measure("dao.insert", null, x -> 1, () -> {
+            String sqlP = "INSERT INTO Personas (nombre, direccion) VALUES (?, ?)";
+            String sqlT = "INSERT INTO Telefonos (personaId, telefono, numero) VALUES (?, ?, ?)";
+            try (Connection con = Db.getConnection()) {
+                con.setAutoCommit(false);
+                try (PreparedStatement ps = con.prepareStatement(sqlP, Statement.RETURN_GENERATED_KEYS)) {
+                    ps.setString(1, p.getNombre());
+                    ps.setString(2, p.getDireccion());
+                    ps.executeUpdate();
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        if (keys.next()) p.setId(keys.getInt(1));
+                    }
+                }
+                try (PreparedStatement psT = con.prepareStatement(sqlT)) {
+                    for (String t : p.getTelefonos()) {
+                        psT.setInt(1, p.getId());
+                        psT.setString(2, t);
+                        PhoneNumbers.bind(psT, 3, t);
+                        psT.addBatch();
+                    }
+                    psT.executeBatch();
+                }
+                ChangeLog.record(con, origin, p.getId(), 0, false);
+                con.commit();
+                p.setVersion(0);
+                saved(p.toContact());
+                phonesChanged(new int[0], List.of(p.toContact()));
+                return p;
+            }
+        });
+    }
+
+    /**
+     * Guarda los cambios de {@code p} escribiendo sólo lo necesario: la fila de {@code Personas}
+     * si cambió el nombre o la dirección, y los teléfonos que sobran o faltan respecto a los
+     * guardados (los que no cambian conservan su fila e id). Los teléfonos nuevos quedan después
+     * de los que ya existían.
+     * <p>
+     * Bloqueo optimista: si la versión guardada no es {@code p.getVersion()} (otro cliente la cambió
+     * o la borró después de leerla) lanza {@link StaleDataException} sin escribir nada. Si hay
+     * cambios, la versión se incrementa y se asigna a {@code p}.
+     */
+    public UpdateResult update(Person p) throws SQLException {
+        return Metrics.measure("dao.update", p.getId(),
+                r -> (r.isPersonUpdated() ? 1 : 0) + r.getInsertedPhoneIds().length + r.getDeletedPhoneIds().length, () -> {
+            String sqlSel = "SELECT nombre, direccion, version FROM Personas WHERE id=? FOR UPDATE";
+            String sqlP = "UPDATE Personas SET nombre=?, direccion=?, version=? WHERE id=?";
+            String sqlSelT = "SELECT id, telefono FROM Telefonos WHERE personaId=? ORDER BY id";
+            String sqlDelT = "DELETE FROM Telefonos WHERE id=?";
+            String sqlInsT = "INSERT INTO Telefonos (personaId, telefono, numero) VALUES (?, ?, ?)";
+            try (Connection con = Db.getConnection()) {
+                con.setAutoCommit(false);
+                boolean personUpdated;
+                try (PreparedStatement ps = con.prepareStatement(sqlSel)) {
+                    ps.setInt(1, p.getId());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (!rs.next()) {
+                            throw new StaleDataException(p.getId(), true);
+                        }
+                        if (rs.getInt(3) != p.getVersion()) {
+                            throw new StaleDataException(p.getId(), false);
+                        }
+                        personUpdated = !Objects.equals(rs.getString(1), p.getNombre())
+                                || !Objects.equals(rs.getString(2), p.getDireccion());
+                    }
+                }
+
+                PhoneDiff diff = new PhoneDiff(p.isTelefonosLoaded() ? p.getTelefonos() : null);
+                try (PreparedStatement ps = con.prepareStatement(sqlSelT)) {
+                    ps.setInt(1, p.getId());
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            diff.stored(rs.getInt(1), rs.getString(2));
+                        }
+                    }
+                }
+                diff.finish();
+                List<Integer> toDelete = diff.toDelete;
+                List<String> toInsert = diff.toInsert;
+                List<String> stored = diff.result;
+
+                if (!toDelete.isEmpty()) {
+                    try (PreparedStatement psDel = con.prepareStatement(sqlDelT)) {
+                        for (int phoneId : toDelete) {
+                            psDel.setInt(1, phoneId);
+                            psDel.addBatch();
+                        }
+                        psDel.executeBatch();
+                    }
+                }
+                int[] inserted = new int[toInsert.size()];
+                if (!toInsert.isEmpty()) {
+                    try (PreparedStatement psIns = con.prepareStatement(sqlInsT, Statement.RETURN_GENERATED_KEYS)) {
+                        for (String t : toInsert) {
+                            psIns.setInt(1, p.getId());
+                            psIns.setString(2, t);
+                            PhoneNumbers.bind(psIns, 3, t);
+                            psIns.addBatch();
+                        }
+                        psIns.executeBatch();
+                        try (ResultSet keys = psIns.getGeneratedKeys()) {
+                            for (int i = 0; i < inserted.length && keys.next(); i++) {
+                                inserted[i] = keys.getInt(1);
+                            }
+                        }
+                    }
+                }
+
+                UpdateResult result = new UpdateResult(p.getId(), personUpdated, inserted,
+                        toDelete.stream().mapToInt(Integer::intValue).toArray());
+                int version = p.getVersion();
+                if (!result.isUnchanged()) {
+                    // También un cambio sólo de teléfonos cambia la versión
+                    version++;
+                    try (PreparedStatement ps = con.prepareStatement(sqlP)) {
+                        ps.setString(1, p.getNombre());
+                        ps.setString(2, p.getDireccion());
+                        ps.setInt(3, version);
+                        ps.setInt(4, p.getId());
+                        ps.executeUpdate();
+                    }
+                    ChangeLog.record(con, origin, p.getId(), version, false);
                 }
+                con.commit();
+                p.setVersion(version);
+
+                // La caché y el índice reflejan el orden en que quedaron guardados los teléfonos
+                Contact current = new Contact(p.getId(), p.getNombre(), p.getDireccion(), stored, version);
+                if (result.isUnchanged()) {
+                    personCache.put(current);
+                } else {
+                    saved(current);
+                }
+                if (!toDelete.isEmpty() || !toInsert.isEmpty()) {
+                    phonesChanged(new int[]{p.getId()}, List.of(current));
+                }
+                return result;
             }
-            try (PreparedStatement psT = con.prepareStatement(sqlT)) {
-                for (String t : p.getTelefonos()) {
-                    psT.setInt(1, p.getId());
-                    psT.setString(2, t);
-                    psT.addBatch();
+        });
+    }
+
+    /** Borra la persona sin comprobar su versión. */
+    public void delete(int personId) throws SQLException {
+        delete(personId, -1);
+    }
+
+    /**
+     * Borra {@code p} si nadie la ha cambiado desde que se leyó; si no, lanza {@link StaleDataException}.
+     * Si ya estaba borrada no hace nada.
+     */
+    public void delete(Person p) throws SQLException {
+        delete(p.getId(), p.getVersion());
+    }
+
+    private void delete(int personId, int version) throws SQLException {
+        Metrics.measure("dao.delete", personId, null, () -> {
+            String sql = "DELETE FROM Personas WHERE id=?" + (version >= 0 ? " AND version=?" : "");
+            try (Connection con = Db.getConnection()) {
+                con.setAutoCommit(false);
+                int count;
+                try (PreparedStatement ps = con.prepareStatement(sql)) {
+                    ps.setInt(1, personId);
+                    if (version >= 0) ps.setInt(2, version);
+                    count = ps.executeUpdate();
                 }
-                psT.executeBatch();
+                if (count == 0) {
+                    con.rollback();
+                    if (version >= 0 && exists(con, personId)) {
+                        throw new StaleDataException(personId, false);
+                    }
+                    return null;
+                }
+                ChangeLog.record(con, origin, personId, Math.max(version, 0), true);
+                con.commit();
+            }
+            personCache.remove(personId);
+            if (searchIndex != null) searchIndex.remove(personId);
+            changed();
+            phonesChanged(new int[]{personId}, List.of());
+            return null;
+        });
+    }
+
+    private static boolean exists(Connection con, int personId) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SELECT 1 FROM Personas WHERE id=?")) {
+            ps.setInt(1, personId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
             }
-            con.commit();
-            return p;
         }
     }
 
-    public void update(Person p) throws SQLException {
-        String sqlP = "UPDATE Personas SET nombre=?, direccion=? WHERE id=?";
-        String sqlDelT = "DELETE FROM Telefonos WHERE personaId=?";
-        String sqlInsT = "INSERT INTO Telefonos (personaId, telefono) VALUES (?, ?)";
-        try (Connection con = Db.getConnection()) {
-            con.setAutoCommit(false);
-            try (PreparedStatement ps = con.prepareStatement(sqlP)) {
-                ps.setString(1, p.getNombre());
-                ps.setString(2, p.getDireccion());
-                ps.setInt(3, p.getId());
-                ps.executeUpdate();
+    /**
+     * Guarda varias personas: inserta las nuevas (id 0, a las que asigna id) y actualiza las demás
+     * escribiendo sólo lo que cambió, como {@link #update(Person)}. Las escrituras van en lotes JDBC,
+     * con una transacción por cada tramo de {@code db.batch.chunkSize} personas. Si un tramo falla
+     * se deshace y se repite fila a fila: las válidas se guardan y cada fallo queda en el resultado
+     * (una persona cambiada por otro cliente falla con {@link StaleDataException}).
+     */
+    public BatchResult saveAll(Collection<Person> persons) throws SQLException {
+        return Metrics.measure("dao.saveAll", persons.size(), BatchResult::getSucceeded, () -> {
+            List<Person> rows = new ArrayList<>(persons);
+            Set<Integer> seen = new HashSet<>();
+            for (Person p : rows) {
+                if (p.getId() != 0 && !seen.add(p.getId())) {
+                    throw new IllegalArgumentException("La persona con id " + p.getId() + " aparece más de una vez");
+                }
+            }
+            int chunkSize = Db.getInt("db.batch.chunkSize", DEFAULT_BATCH_SIZE);
+            List<Integer> savedIds = new ArrayList<>();
+            List<BatchResult.Failure> failures = new ArrayList<>();
+            try (Connection con = Db.getConnection()) {
+                con.setAutoCommit(false);
+                for (int from = 0; from < rows.size(); from += chunkSize) {
+                    List<Person> chunk = rows.subList(from, Math.min(from + chunkSize, rows.size()));
+                    try {
+                        List<Contact> stored = saveChunk(con, chunk);
+                        con.commit();
+                        savedChunk(chunk, stored, savedIds);
+                    } catch (SQLException e) {
+                        con.rollback();
+                        for (int i = 0; i < chunk.size(); i++) {
+                            Person p = chunk.get(i);
+                            try {
+                                List<Contact> stored = saveChunk(con, List.of(p));
+                                con.commit();
+                                savedChunk(List.of(p), stored, savedIds);
+                            } catch (SQLException rowError) {
+                                con.rollback();
+                                failures.add(new BatchResult.Failure(from + i, p.getId(), rowError));
+                            }
+                        }
+                    }
+                }
+            }
+            if (!savedIds.isEmpty()) {
+                changed();
+            }
+            return new BatchResult(rows.size(), savedIds.stream().mapToInt(Integer::intValue).toArray(), failures);
+        });
+    }
+
+    /**
+     * Borra las personas {@code ids} (y sus teléfonos) en lotes, con una transacción por tramo.
+     * Los ids que no existen se ignoran; el resultado sólo incluye los que se borraron.
+     */
+    public BatchResult deleteAll(int[] ids) throws SQLException {
+        return Metrics.measure("dao.deleteAll", ids.length, BatchResult::getSucceeded, () -> {
+            String sql = "DELETE FROM Personas WHERE id=?";
+            int chunkSize = Db.getInt("db.batch.chunkSize", DEFAULT_BATCH_SIZE);
+            List<Integer> deleted = new ArrayList<>();
+            List<BatchResult.Failure> failures = new ArrayList<>();
+            try (Connection con = Db.getConnection()) {
+                con.setAutoCommit(false);
+                for (int from = 0; from < ids.length; from += chunkSize) {
+                    int to = Math.min(from + chunkSize, ids.length);
+                    try (PreparedStatement ps = con.prepareStatement(sql)) {
+                        for (int i = from; i < to; i++) {
+                            ps.setInt(1, ids[i]);
+                            ps.addBatch();
+                        }
+                        int[] counts = ps.executeBatch();
+                        int[] done = new int[to - from];
+                        int n = 0;
+                        for (int i = from; i < to; i++) {
+                            if (counts[i - from] != 0) done[n++] = ids[i];
+                        }
+                        ChangeLog.recordAll(con, origin, Arrays.copyOf(done, n), new int[n], true);
+                        con.commit();
+                        for (int i = 0; i < n; i++) {
+                            deleted.add(done[i]);
+                        }
+                    } catch (SQLException e) {
+                        con.rollback();
+                        for (int i = from; i < to; i++) {
+                            try (PreparedStatement ps = con.prepareStatement(sql)) {
+                                ps.setInt(1, ids[i]);
+                                int count = ps.executeUpdate();
+                                if (count > 0) ChangeLog.record(con, origin, ids[i], 0, true);
+                                con.commit();
+                                if (count > 0) deleted.add(ids[i]);
+                            } catch (SQLException rowError) {
+                                con.rollback();
+                                failures.add(new BatchResult.Failure(i, ids[i], rowError));
+                            }
+                        }
+                    }
+                }
+            }
+            for (int id : deleted) {
+                personCache.remove(id);
+                if (searchIndex != null) searchIndex.remove(id);
+            }
+            if (!deleted.isEmpty()) {
+                changed();
+                phonesChanged(deleted.stream().mapToInt(Integer::intValue).toArray(), List.of());
+            }
+            return new BatchResult(ids.length, deleted.stream().mapToInt(Integer::intValue).toArray(), failures);
+        });
+    }
+
+    /** Escribe un tramo de {@link #saveAll} sin confirmarlo; devuelve cómo quedó cada persona. */
+    private List<Contact> saveChunk(Connection con, List<Person> chunk) throws SQLException {
+        String sqlInsP = "INSERT INTO Personas (nombre, direccion) VALUES (?, ?)";
+        String sqlUpdP = "UPDATE Personas SET nombre=?, direccion=?, version=? WHERE id=?";
+        String sqlDelT = "DELETE FROM Telefonos WHERE id=?";
+        String sqlInsT = "INSERT INTO Telefonos (personaId, telefono, numero) VALUES (?, ?, ?)";
+
+        List<Person> updates = new ArrayList<>();
+        List<Integer> changedIds = new ArrayList<>();
+        // Ids asignados a las personas nuevas, por posición en el tramo
+        int[] newIds = new int[chunk.size()];
+        boolean anyNew = false;
+        for (Person p : chunk) {
+            if (p.getId() == 0) anyNew = true; else updates.add(p);
+        }
+
+        if (anyNew) {
+            try (PreparedStatement ps = con.prepareStatement(sqlInsP, Statement.RETURN_GENERATED_KEYS)) {
+                for (Person p : chunk) {
+                    if (p.getId() != 0) continue;
+                    ps.setString(1, p.getNombre());
+                    ps.setString(2, p.getDireccion());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        if (chunk.get(i).getId() != 0) continue;
+                        if (!keys.next()) {
+                            throw new SQLException("El driver no devolvió las claves generadas de todas las personas");
+                        }
+                        newIds[i] = keys.getInt(1);
+                    }
+                }
+            }
+        }
+
+        // Estado guardado de las personas a actualizar, con bloqueo, en dos consultas por tramo
+        Map<Integer, String[]> storedRows = new HashMap<>();
+        Map<Integer, Integer> versions = new HashMap<>();
+        Map<Integer, PhoneDiff> diffs = new HashMap<>();
+        if (!updates.isEmpty()) {
+            String in = String.join(",", Collections.nCopies(updates.size(), "?"));
+            Object[] ids = updates.stream().map(Person::getId).toArray();
+            try (PreparedStatement ps = con.prepareStatement(
+                    "SELECT id, nombre, direccion, version FROM Personas WHERE id IN (" + in + ") FOR UPDATE")) {
+                bind(ps, ids);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        storedRows.put(rs.getInt(1), new String[]{rs.getString(2), rs.getString(3)});
+                        versions.put(rs.getInt(1), rs.getInt(4));
+                    }
+                }
             }
-            try (PreparedStatement psDel = con.prepareStatement(sqlDelT)) {
-                psDel.setInt(1, p.getId());
-                psDel.executeUpdate();
+            for (Person p : updates) {
+                if (!storedRows.containsKey(p.getId())) {
+                    throw new StaleDataException(p.getId(), true);
+                }
+                if (versions.get(p.getId()) != p.getVersion()) {
+                    throw new StaleDataException(p.getId(), false);
+                }
+                diffs.put(p.getId(), new PhoneDiff(p.isTelefonosLoaded() ? p.getTelefonos() : null));
             }
-            try (PreparedStatement psIns = con.prepareStatement(sqlInsT)) {
-                for (String t : p.getTelefonos()) {
-                    psIns.setInt(1, p.getId());
-                    psIns.setString(2, t);
-                    psIns.addBatch();
+            try (PreparedStatement ps = con.prepareStatement(
+                    "SELECT id, personaId, telefono FROM Telefonos WHERE personaId IN (" + in + ") ORDER BY personaId, id")) {
+                bind(ps, ids);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) diffs.get(rs.getInt(2)).stored(rs.getInt(1), rs.getString(3));
                 }
-                psIns.executeBatch();
             }
-            con.commit();
+            diffs.values().forEach(PhoneDiff::finish);
         }
+
+        try (PreparedStatement updP = con.prepareStatement(sqlUpdP);
+             PreparedStatement delT = con.prepareStatement(sqlDelT);
+             PreparedStatement insT = con.prepareStatement(sqlInsT)) {
+            boolean anyUpd = false, anyDel = false, anyIns = false;
+            for (Person p : updates) {
+                String[] row = storedRows.get(p.getId());
+                PhoneDiff diff = diffs.get(p.getId());
+                if (!Objects.equals(row[0], p.getNombre()) || !Objects.equals(row[1], p.getDireccion())
+                        || !diff.toDelete.isEmpty() || !diff.toInsert.isEmpty()) {
+                    versions.merge(p.getId(), 1, Integer::sum);
+                    updP.setString(1, p.getNombre());
+                    updP.setString(2, p.getDireccion());
+                    updP.setInt(3, versions.get(p.getId()));
+                    updP.setInt(4, p.getId());
+                    updP.addBatch();
+                    changedIds.add(p.getId());
+                    anyUpd = true;
+                }
+                for (int phoneId : diff.toDelete) {
+                    delT.setInt(1, phoneId);
+                    delT.addBatch();
+                    anyDel = true;
+                }
+                for (String t : diff.toInsert) {
+                    insT.setInt(1, p.getId());
+                    insT.setString(2, t);
+                    PhoneNumbers.bind(insT, 3, t);
+                    insT.addBatch();
+                    anyIns = true;
+                }
+            }
+            for (int i = 0; i < chunk.size(); i++) {
+                if (newIds[i] == 0) continue;
+                for (String t : chunk.get(i).getTelefonos()) {
+                    insT.setInt(1, newIds[i]);
+                    insT.setString(2, t);
+                    PhoneNumbers.bind(insT, 3, t);
+                    insT.addBatch();
+                    anyIns = true;
+                }
+            }
+            if (anyUpd) updP.executeBatch();
+            if (anyDel) delT.executeBatch();
+            if (anyIns) insT.executeBatch();
+        }
+        ChangeLog.recordAll(con, origin, Arrays.stream(newIds).filter(id -> id != 0).toArray(), null, false);
+        ChangeLog.recordAll(con, origin, changedIds.stream().mapToInt(Integer::intValue).toArray(),
+                changedIds.stream().mapToInt(versions::get).toArray(), false);
+
+        List<Contact> stored = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            Person p = chunk.get(i);
+            stored.add(newIds[i] != 0
+                    ? new Contact(newIds[i], p.getNombre(), p.getDireccion(), p.getTelefonos())
+                    : new Contact(p.getId(), p.getNombre(), p.getDireccion(), diffs.get(p.getId()).result,
+                            versions.get(p.getId())));
+        }
+        return stored;
     }
 
-    public void delete(int personId) throws SQLException {
-        String sql = "DELETE FROM Personas WHERE id=?";
-        try (Connection con = Db.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
+    /** Tras confirmar un tramo: asigna los ids y versiones nuevos y pone al día la caché y el índice. */
+    private void savedChunk(List<Person> chunk, List<Contact> stored, List<Integer> savedIds) {
+        for (int i = 0; i < chunk.size(); i++) {
+            Contact c = stored.get(i);
+            chunk.get(i).setId(c.getId());
+            chunk.get(i).setVersion(c.getVersion());
+            personCache.put(c);
+            if (searchIndex != null) {
+                searchIndex.put(c.getId(), c.getNombre(), c.getDireccion(), c.getTelefonos());
+            }
+            savedIds.add(c.getId());
+        }
+        phonesChanged(stored.stream().mapToInt(Contact::getId).toArray(), stored);
+    }
+
+    /**
+     * Deja los teléfonos guardados de la persona como {@code phones} tocando sólo las filas que cambian
+     * (ver {@link PhoneDiff}); no anota nada en {@code Cambios} ni confirma la transacción. Devuelve
+     * {@code true} si cambió alguna fila. Lo usa la copia local al enviar y recibir personas.
+     */
+    public static boolean writePhones(Connection con, int personId, List<String> phones) throws SQLException {
+        PhoneDiff diff = new PhoneDiff(phones);
+        try (PreparedStatement ps = con.prepareStatement("SELECT id, telefono FROM Telefonos WHERE personaId=? ORDER BY id")) {
             ps.setInt(1, personId);
-            ps.executeUpdate();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    diff.stored(rs.getInt(1), rs.getString(2));
+                }
+            }
+        }
+        diff.finish();
+        if (!diff.toDelete.isEmpty()) {
+            try (PreparedStatement ps = con.prepareStatement("DELETE FROM Telefonos WHERE id=?")) {
+                for (int phoneId : diff.toDelete) {
+                    ps.setInt(1, phoneId);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+        if (!diff.toInsert.isEmpty()) {
+            try (PreparedStatement ps = con.prepareStatement("INSERT INTO Telefonos (personaId, telefono, numero) VALUES (?, ?, ?)")) {
+                for (String t : diff.toInsert) {
+                    ps.setInt(1, personId);
+                    ps.setString(2, t);
+                    PhoneNumbers.bind(ps, 3, t);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+        return !diff.toDelete.isEmpty() || !diff.toInsert.isEmpty();
+    }
+
+    /**
+     * Diferencia entre los teléfonos deseados y los guardados, como multiconjunto: cada teléfono
+     * deseado "consume" una fila guardada igual; las filas sin pareja se borran y los deseados que
+     * sobran se insertan. {@code result} es el orden en que quedan guardados. Sin teléfonos deseados
+     * ({@code null}: la persona es un resumen que no los ha cargado) se conservan los guardados.
+     */
+    private static final class PhoneDiff {
+        private final List<String> wantedOrder;
+        private final Map<String, Integer> wanted = new HashMap<>();
+        final List<Integer> toDelete = new ArrayList<>();
+        final List<String> toInsert = new ArrayList<>();
+        final List<String> result = new ArrayList<>();
+
+        private final boolean keep;
+
+        PhoneDiff(List<String> wantedPhones) {
+            this.keep = wantedPhones == null;
+            this.wantedOrder = keep ? List.of() : new ArrayList<>(wantedPhones);
+            for (String t : wantedOrder) {
+                wanted.merge(t, 1, Integer::sum);
+            }
         }
+
+        /** Una fila guardada, en orden de id. */
+        void stored(int phoneId, String telefono) {
+            if (keep) {
+                result.add(telefono);
+            } else if (wanted.getOrDefault(telefono, 0) > 0) {
+                wanted.merge(telefono, -1, Integer::sum);
+                result.add(telefono);
+            } else {
+                toDelete.add(phoneId);
+            }
+        }
+
+        void finish() {
+            for (String t : wantedOrder) {
+                if (wanted.getOrDefault(t, 0) > 0) {
+                    wanted.merge(t, -1, Integer::sum);
+                    toInsert.add(t);
+                }
+            }
+            result.addAll(toInsert);
+        }
+    }
+
+    private void saved(Contact c) {
+        personCache.put(c);
+        if (searchIndex != null) {
+            searchIndex.put(c.getId(), c.getNombre(), c.getDireccion(), c.getTelefonos());
+        }
+        changed();
+    }
+
+    // Después de actualizar el índice: invalida las búsquedas en caché y, durante
+    // db.replica.stickyMs, las lecturas van al primario para ver el cambio
+    private void changed() {
+        Db.markWrite();
+        invalidateQueries();
+    }
+
+    private void invalidateQueries() {
+        writes.incrementAndGet();
+        queryCache.clear();
+    }
+
+    // Quita de phoneCache los números que tenían las personas ids y los que tienen ahora (contacts)
+    private void phonesChanged(int[] ids, List<Contact> contacts) {
+        phoneWrites.incrementAndGet();
+        Set<Integer> owners = new HashSet<>();
+        for (int id : ids) owners.add(id);
+        phoneCache.removeValues(owners);
+        for (Contact c : contacts) {
+            for (String t : c.getTelefonos()) phoneCache.remove(PhoneNumbers.normalize(t));
+        }
+    }
+
+    private void phoneChanged(String telefono) {
+        phoneWrites.incrementAndGet();
+        phoneCache.remove(PhoneNumbers.normalize(telefono));
     }
 
     // Additional methods needed by MainController
@@ -127,28 +1351,78 @@ public class PersonDao {
     }
     
     public List<String> getTelefonos(int personId) throws SQLException {
-        try (Connection con = Db.getConnection()) {
-            return loadPhones(con, personId);
-        }
+        return Metrics.measure("dao.getTelefonos", personId, List::size, () -> {
+            Contact cached = personCache.get(personId);
+            if (cached != null) {
+                return cached.getTelefonos();
+            }
+            try (Connection con = Db.getReadConnection()) {
+                return loadPhones(con, personId);
+            }
+        });
     }
     
+    /** Añade un teléfono sin comprobar la versión (no pisa nada); la versión de la persona sube. */
     public void addTelefono(int personId, String telefono) throws SQLException {
-        String sql = "INSERT INTO Telefonos (personaId, telefono) VALUES (?, ?)";
-        try (Connection con = Db.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
-            ps.setInt(1, personId);
-            ps.setString(2, telefono);
-            ps.executeUpdate();
-        }
+        Metrics.measure("dao.addTelefono", personId, null, () -> {
+            String sql = "INSERT INTO Telefonos (personaId, telefono, numero) VALUES (?, ?, ?)";
+            try (Connection con = Db.getConnection()) {
+                con.setAutoCommit(false);
+                try (PreparedStatement ps = con.prepareStatement(sql)) {
+                    ps.setInt(1, personId);
+                    ps.setString(2, telefono);
+                    PhoneNumbers.bind(ps, 3, telefono);
+                    ps.executeUpdate();
+                }
+                int version = nextVersion(con, personId);
+                con.commit();
+                personCache.addTelefono(personId, telefono, version);
+            }
+            if (searchIndex != null) searchIndex.addTelefono(personId, telefono);
+            changed();
+            phoneChanged(telefono);
+            return null;
+        });
     }
     
     public void removeTelefono(int personId, String telefono) throws SQLException {
-        String sql = "DELETE FROM Telefonos WHERE personaId = ? AND telefono = ?";
-        try (Connection con = Db.getConnection();
-             PreparedStatement ps = con.prepareStatement(sql)) {
+        Metrics.measure("dao.removeTelefono", personId, null, () -> {
+            String sql = "DELETE FROM Telefonos WHERE personaId = ? AND telefono = ?";
+            try (Connection con = Db.getConnection()) {
+                con.setAutoCommit(false);
+                try (PreparedStatement ps = con.prepareStatement(sql)) {
+                    ps.setInt(1, personId);
+                    ps.setString(2, telefono);
+                    if (ps.executeUpdate() == 0) {
+                        con.rollback();
+                        return null;
+                    }
+                }
+                int version = nextVersion(con, personId);
+                con.commit();
+                personCache.removeTelefono(personId, telefono, version);
+            }
+            if (searchIndex != null) searchIndex.removeTelefono(personId, telefono);
+            changed();
+            phoneChanged(telefono);
+            return null;
+        });
+    }
+
+    // Incrementa la versión de la persona y anota el cambio, en la transacción de con
+    private int nextVersion(Connection con, int personId) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("UPDATE Personas SET version = version + 1 WHERE id=?")) {
             ps.setInt(1, personId);
-            ps.setString(2, telefono);
             ps.executeUpdate();
         }
+        int version;
+        try (PreparedStatement ps = con.prepareStatement("SELECT version FROM Personas WHERE id=?")) {
+            ps.setInt(1, personId);
+            try (ResultSet rs = ps.executeQuery()) {
+                version = rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+        ChangeLog.record(con, origin, personId, version, false);
+        return version;
     }
 }
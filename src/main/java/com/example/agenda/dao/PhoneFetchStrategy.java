@@ -0,0 +1,13 @@
+package com.example.agenda.dao;
+
+/**
+ * Cómo carga {@link PersonDao} los teléfonos de las personas devueltas por una consulta.
+ */
+public enum PhoneFetchStrategy {
+    /** Una consulta por persona (comportamiento original, N+1 consultas). */
+    PER_PERSON,
+    /** Un único {@code LEFT JOIN} ordenado por persona que se recorre en una pasada. */
+    JOIN,
+    /** Una consulta de personas y luego lotes {@code WHERE personaId IN (...)}. */
+    BATCHED
+}
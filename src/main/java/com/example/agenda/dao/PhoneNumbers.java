@@ -0,0 +1,72 @@
+package com.example.agenda.dao;
+
+import com.example.agenda.Db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Forma canónica de un teléfono, la que se guarda en {@code Telefonos.numero}: sólo sus dígitos,
+ * con el prefijo del país, como un número. {@code "+34 600-11-12-22"}, {@code "0034 600111222"} y
+ * {@code "600 11 12 22"} (con {@code telefonos.prefijoPais=34}) dan todos {@code 34600111222}.
+ * Los números sin {@code +} ni {@code 00} delante se consideran nacionales; no se quitan prefijos
+ * interurbanos. Un texto sin dígitos o con más de 18 no tiene forma canónica.
+ */
+public final class PhoneNumbers {
+    /** Sin forma canónica: en la base de datos queda {@code NULL}. */
+    public static final long NONE = -1;
+    private static final int MAX_DIGITS = 18;
+    private static final int COUNTRY_CODE = Db.getInt("telefonos.prefijoPais", 34);
+
+    private PhoneNumbers() {
+    }
+
+    /** Con el prefijo de país configurado en {@code telefonos.prefijoPais} (0 = no añadir ninguno). */
+    public static long normalize(String telefono) {
+        return normalize(telefono, COUNTRY_CODE);
+    }
+
+    public static long normalize(String telefono, int countryCode) {
+        if (telefono == null) {
+            return NONE;
+        }
+        StringBuilder digits = new StringBuilder(telefono.length());
+        for (int i = 0; i < telefono.length(); i++) {
+            char ch = telefono.charAt(i);
+            if (ch >= '0' && ch <= '9') {
+                digits.append(ch);
+            }
+        }
+        // Internacional si lo primero que aparece es "+" (también "(+34) ...")
+        boolean international = false;
+        for (int i = 0; i < telefono.length(); i++) {
+            char ch = telefono.charAt(i);
+            if (ch == '+' || ch >= '0' && ch <= '9') {
+                international = ch == '+';
+                break;
+            }
+        }
+        if (!international && digits.length() > 2 && digits.charAt(0) == '0' && digits.charAt(1) == '0') {
+            digits.delete(0, 2);
+            international = true;
+        }
+        if (!international && countryCode > 0 && digits.length() > 0) {
+            digits.insert(0, countryCode);
+        }
+        if (digits.length() == 0 || digits.length() > MAX_DIGITS) {
+            return NONE;
+        }
+        return Long.parseLong(digits.toString());
+    }
+
+    /** Asigna a {@code ps} la forma canónica de {@code telefono}, o {@code NULL} si no tiene. */
+    public static void bind(PreparedStatement ps, int index, String telefono) throws SQLException {
+        long number = normalize(telefono);
+        if (number == NONE) {
+            ps.setNull(index, Types.BIGINT);
+        } else {
+            ps.setLong(index, number);
+        }
+    }
+}
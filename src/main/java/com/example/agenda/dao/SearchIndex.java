@@ -0,0 +1,399 @@
+package com.example.agenda.dao;
+
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Índice invertido de trigramas en memoria sobre {@code nombre}, {@code direccion} y los
+ * teléfonos de cada persona. Resuelve búsquedas por subcadena y por prefijo sin recorrer la
+ * tabla y devuelve los ids ordenados por relevancia.
+ * <p>
+ * Los textos se comparan en minúsculas y sin acentos; los teléfonos, sólo por sus dígitos.
+ * {@link PersonDao} lo mantiene al día en cada escritura.
+ */
+public class SearchIndex {
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern PHONE_LIKE = Pattern.compile("[0-9+()./ -]*[0-9][0-9+()./ -]*");
+    // Marcadores de inicio y fin: así los campos de 1-2 caracteres también generan trigramas. El fin va
+    // dos veces para que también el último carácter empiece un trigrama (búsquedas de una letra)
+    private static final char START = '\u0001';
+    private static final char END = '\u0002';
+
+    private static final int SCORE_NAME_PREFIX = 6;
+    private static final int SCORE_NAME_WORD = 5;
+    private static final int SCORE_NAME = 4;
+    private static final int SCORE_ADDRESS_PREFIX = 3;
+    private static final int SCORE_ADDRESS = 2;
+    private static final int SCORE_PHONE = 1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Integer, Doc> docs = new HashMap<>();
+    private Map<Long, Postings> postings = new HashMap<>();
+    private volatile boolean ready;
+    // Escrituras recibidas mientras se reconstruye el índice; se vuelven a aplicar al terminar, también
+    // las que el recorrido ya vio, así que cada una debe dar lo mismo aplicada dos veces
+    private List<Runnable> pending;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Reconstruye el índice completo a partir de la base de datos. */
+    public void rebuild(PersonDao dao) throws SQLException {
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        SearchIndex fresh = new SearchIndex();
+        try {
+            dao.scanAll(fresh::put);
+        } catch (SQLException | RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        lock.writeLock().lock();
+        try {
+            docs = fresh.docs;
+            postings = fresh.postings;
+            List<Runnable> replay = pending;
+            pending = null;
+            replay.forEach(Runnable::run);
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void put(int id, String nombre, String direccion, List<String> telefonos) {
+        write(() -> {
+            Doc old = docs.get(id);
+            Doc doc = new Doc(normalize(nombre), normalize(direccion), phones(telefonos));
+            replace(id, old, doc);
+        });
+    }
+
+    public void remove(int id) {
+        write(() -> replace(id, docs.get(id), null));
+    }
+
+    public void addTelefono(int id, String telefono) {
+        write(() -> {
+            Doc old = docs.get(id);
+            if (old == null) return;
+            String phone = digits(telefono);
+            // Repetir un teléfono no cambia ninguna búsqueda; así, volver a aplicar la escritura tras
+            // reconstruir no lo duplica si el recorrido ya lo había leído
+            if (Arrays.asList(old.telefonos).contains(phone)) return;
+            String[] phones = Arrays.copyOf(old.telefonos, old.telefonos.length + 1);
+            phones[old.telefonos.length] = phone;
+            replace(id, old, new Doc(old.nombre, old.direccion, phones));
+        });
+    }
+
+    public void removeTelefono(int id, String telefono) {
+        write(() -> {
+            Doc old = docs.get(id);
+            if (old == null) return;
+            String phone = digits(telefono);
+            List<String> phones = new ArrayList<>(Arrays.asList(old.telefonos));
+            // Como en la base de datos: se quitan todas las filas con ese teléfono
+            if (phones.removeIf(phone::equals)) {
+                replace(id, old, new Doc(old.nombre, old.direccion, phones.toArray(new String[0])));
+            }
+        });
+    }
+
+    /** Dígitos de los teléfonos indexados de una persona, o {@code null} si no está. */
+    List<String> telefonos(int id) {
+        lock.readLock().lock();
+        try {
+            Doc doc = docs.get(id);
+            return doc != null ? List.of(doc.telefonos) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids de las personas cuyo nombre, dirección o teléfono contiene {@code text},
+     * de más a menos relevante (a igual relevancia, por id).
+     */
+    public int[] search(String text) {
+        return search(text, null);
+    }
+
+    /**
+     * Como {@link #search(String)} pero sólo entre {@code candidates} (por ejemplo, los resultados
+     * de un prefijo de {@code text}); si es {@code null}, entre todas las personas.
+     */
+    public int[] search(String text, int[] candidateIds) {
+        String q = normalize(text);
+        // Sólo una consulta con forma de teléfono se compara con los dígitos de los teléfonos
+        String qDigits = isPhoneLike(q) ? digits(q) : "";
+        if (q.isEmpty()) return new int[0];
+
+        lock.readLock().lock();
+        try {
+            Postings candidates;
+            if (candidateIds != null) {
+                candidates = new Postings(candidateIds, candidateIds.length);
+            } else {
+                candidates = candidates(q);
+                if (!qDigits.isEmpty() && !qDigits.equals(q)) {
+                    candidates = Postings.union(candidates, candidates(qDigits));
+                }
+            }
+            long[] ranked = new long[candidates.size];
+            int n = 0;
+            for (int i = 0; i < candidates.size; i++) {
+                int id = candidates.ids[i];
+                int score = score(docs.get(id), q, qDigits);
+                if (score > 0) {
+                    // Mayor puntuación primero y, dentro de la misma, id ascendente
+                    ranked[n++] = ((long) (SCORE_NAME_PREFIX - score) << 32) | id;
+                }
+            }
+            Arrays.sort(ranked, 0, n);
+            int[] ids = new int[n];
+            for (int i = 0; i < n; i++) {
+                ids[i] = (int) ranked[i];
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Si una consulta ya normalizada tiene forma de teléfono: entonces también se busca por los dígitos
+     * de los teléfonos. Los resultados de un prefijo sólo sirven para refinar una consulta de la misma forma.
+     */
+    static boolean isPhoneLike(String q) {
+        return PHONE_LIKE.matcher(q).matches();
+    }
+
+    private Postings candidates(String q) {
+        if (q.length() >= 3) {
+            List<Postings> lists = new ArrayList<>();
+            for (int i = 0; i + 3 <= q.length(); i++) {
+                Postings p = postings.get(gram(q.charAt(i), q.charAt(i + 1), q.charAt(i + 2)));
+                if (p == null) return Postings.EMPTY;
+                lists.add(p);
+            }
+            // Empezar por el trigrama menos frecuente mantiene pequeños los resultados intermedios
+            lists.sort(Comparator.comparingInt(p -> p.size));
+            Postings result = lists.get(0);
+            for (int i = 1; i < lists.size() && result.size > 0; i++) {
+                result = Postings.intersect(result, lists.get(i));
+            }
+            return result;
+        }
+        // Consulta corta: unión de los trigramas que empiezan por ella
+        long prefix = q.length() == 1 ? q.charAt(0) : ((long) q.charAt(0) << 16) | q.charAt(1);
+        int shift = q.length() == 1 ? 32 : 16;
+        BitSet union = new BitSet();
+        for (Map.Entry<Long, Postings> e : postings.entrySet()) {
+            if (e.getKey() >>> shift == prefix) {
+                Postings p = e.getValue();
+                for (int i = 0; i < p.size; i++) union.set(p.ids[i]);
+            }
+        }
+        return new Postings(union.stream().toArray(), union.cardinality());
+    }
+
+    private static int score(Doc doc, String q, String qDigits) {
+        if (doc == null) return 0;
+        if (doc.nombre.startsWith(q)) return SCORE_NAME_PREFIX;
+        int at = doc.nombre.indexOf(q);
+        if (at > 0) return doc.nombre.charAt(at - 1) == ' ' ? SCORE_NAME_WORD : SCORE_NAME;
+        if (doc.direccion.startsWith(q)) return SCORE_ADDRESS_PREFIX;
+        if (doc.direccion.contains(q)) return SCORE_ADDRESS;
+        if (!qDigits.isEmpty()) {
+            for (String t : doc.telefonos) {
+                if (t.contains(qDigits)) return SCORE_PHONE;
+            }
+        }
+        return 0;
+    }
+
+    private void write(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+            if (pending != null) {
+                pending.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void replace(int id, Doc old, Doc doc) {
+        Set<Long> oldGrams = old != null ? old.grams() : Set.of();
+        Set<Long> newGrams = doc != null ? doc.grams() : Set.of();
+        for (long g : oldGrams) {
+            if (!newGrams.contains(g)) {
+                Postings p = postings.get(g);
+                if (p != null) {
+                    p.remove(id);
+                    if (p.size == 0) postings.remove(g);
+                }
+            }
+        }
+        for (long g : newGrams) {
+            if (!oldGrams.contains(g)) {
+                postings.computeIfAbsent(g, k -> new Postings()).add(id);
+            }
+        }
+        if (doc != null) docs.put(id, doc); else docs.remove(id);
+    }
+
+    static String normalize(String text) {
+        if (text == null) return "";
+        String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return folded.toLowerCase().trim().replaceAll("\\s+", " ");
+    }
+
+    static String digits(String text) {
+        if (text == null) return "";
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static String[] phones(List<String> telefonos) {
+        String[] phones = new String[telefonos.size()];
+        for (int i = 0; i < phones.length; i++) {
+            phones[i] = digits(telefonos.get(i));
+        }
+        return phones;
+    }
+
+    private static long gram(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    private static final class Doc {
+        final String nombre;
+        final String direccion;
+        final String[] telefonos;
+
+        Doc(String nombre, String direccion, String[] telefonos) {
+            this.nombre = nombre;
+            this.direccion = direccion;
+            this.telefonos = telefonos;
+        }
+
+        Set<Long> grams() {
+            Set<Long> grams = new HashSet<>();
+            addGrams(grams, nombre);
+            addGrams(grams, direccion);
+            for (String t : telefonos) addGrams(grams, t);
+            return grams;
+        }
+
+        private static void addGrams(Set<Long> grams, String field) {
+            if (field.isEmpty()) return;
+            String padded = START + field + END + END;
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                grams.add(gram(padded.charAt(i), padded.charAt(i + 1), padded.charAt(i + 2)));
+            }
+        }
+    }
+
+    /** Lista ordenada de ids sin repetidos. */
+    private static final class Postings {
+        static final Postings EMPTY = new Postings(new int[0], 0);
+
+        int[] ids;
+        int size;
+
+        Postings() {
+            this(new int[4], 0);
+        }
+
+        Postings(int[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+
+        void add(int id) {
+            int at = size > 0 && ids[size - 1] < id ? size : Arrays.binarySearch(ids, 0, size, id);
+            if (at < size && at >= 0) return;
+            if (at < 0) at = -at - 1;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        void remove(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at < 0) return;
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+        }
+
+        static Postings intersect(Postings a, Postings b) {
+            int[] out = new int[Math.min(a.size, b.size)];
+            int i = 0, j = 0, n = 0;
+            if (a.size * 16 < b.size) {
+                // Lista corta contra lista larga: búsqueda binaria en lugar de recorrer la larga
+                for (; i < a.size; i++) {
+                    int at = Arrays.binarySearch(b.ids, j, b.size, a.ids[i]);
+                    if (at >= 0) out[n++] = a.ids[i];
+                    j = at >= 0 ? at + 1 : -at - 1;
+                }
+                return new Postings(out, n);
+            }
+            while (i < a.size && j < b.size) {
+                if (a.ids[i] < b.ids[j]) i++;
+                else if (a.ids[i] > b.ids[j]) j++;
+                else { out[n++] = a.ids[i]; i++; j++; }
+            }
+            return new Postings(out, n);
+        }
+
+        static Postings union(Postings a, Postings b) {
+            int[] out = new int[a.size + b.size];
+            int i = 0, j = 0, n = 0;
+            while (i < a.size || j < b.size) {
+                if (j >= b.size || (i < a.size && a.ids[i] < b.ids[j])) out[n++] = a.ids[i++];
+                else if (i >= a.size || b.ids[j] < a.ids[i]) out[n++] = b.ids[j++];
+                else { out[n++] = a.ids[i]; i++; j++; }
+            }
+            return new Postings(out, n);
+        }
+    }
+}
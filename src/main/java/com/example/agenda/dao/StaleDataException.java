@@ -0,0 +1,26 @@
+package com.example.agenda.dao;
+
+import java.sql.SQLException;
+
+/**
+ * Otro cliente modificó o borró la persona después de que se leyera: su versión ya no es la
+ * que se esperaba. No se ha escrito nada; hay que volver a leerla y repetir el cambio.
+ */
+public class StaleDataException extends SQLException {
+    private static final long serialVersionUID = 1L;
+
+    private final int personId;
+    private final boolean deleted;
+
+    public StaleDataException(int personId, boolean deleted) {
+        super("La persona con id " + personId + " ha sido " + (deleted ? "eliminada" : "modificada")
+                + " por otro usuario");
+        this.personId = personId;
+        this.deleted = deleted;
+    }
+
+    public int getPersonId() { return personId; }
+
+    /** {@code true} si la persona ya no existe. */
+    public boolean isDeleted() { return deleted; }
+}
@@ -0,0 +1,17 @@
+package com.example.agenda.dao;
+
+import java.sql.SQLException;
+
+/** Error de base de datos al recorrer un {@code Stream} de {@link PersonDao}, que no admite excepciones comprobadas. */
+public class UncheckedSQLException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedSQLException(SQLException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
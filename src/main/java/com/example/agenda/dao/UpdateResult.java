@@ -0,0 +1,38 @@
+package com.example.agenda.dao;
+
+import java.util.Arrays;
+
+/**
+ * Filas que ha tocado {@link PersonDao#update}: si se actualizó la fila de {@code Personas}
+ * y qué filas de {@code Telefonos} se insertaron o borraron.
+ */
+public class UpdateResult {
+    private final int personId;
+    private final boolean personUpdated;
+    private final int[] insertedPhoneIds;
+    private final int[] deletedPhoneIds;
+
+    public UpdateResult(int personId, boolean personUpdated, int[] insertedPhoneIds, int[] deletedPhoneIds) {
+        this.personId = personId;
+        this.personUpdated = personUpdated;
+        this.insertedPhoneIds = insertedPhoneIds;
+        this.deletedPhoneIds = deletedPhoneIds;
+    }
+
+    public int getPersonId() { return personId; }
+    public boolean isPersonUpdated() { return personUpdated; }
+    public int[] getInsertedPhoneIds() { return insertedPhoneIds.clone(); }
+    public int[] getDeletedPhoneIds() { return deletedPhoneIds.clone(); }
+
+    /** {@code true} si no hizo falta escribir nada. */
+    public boolean isUnchanged() {
+        return !personUpdated && insertedPhoneIds.length == 0 && deletedPhoneIds.length == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "UpdateResult{personId=" + personId + ", personUpdated=" + personUpdated
+                + ", insertedPhoneIds=" + Arrays.toString(insertedPhoneIds)
+                + ", deletedPhoneIds=" + Arrays.toString(deletedPhoneIds) + "}";
+    }
+}
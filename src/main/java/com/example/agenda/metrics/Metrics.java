@@ -0,0 +1,216 @@
+package com.example.agenda.metrics;
+
+import com.example.agenda.Db;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import java.util.logging.Logger;
+
+/**
+ * Registro de métricas de las operaciones de base de datos. Cada operación se publica en JMX
+ * y, si {@code metrics.dumpIntervalSec > 0}, todas se vuelcan periódicamente a
+ * {@code metrics.dumpFile} en el formato de texto de Prometheus.
+ */
+public final class Metrics {
+    /** Cuerpo de una operación medida. */
+    @FunctionalInterface
+    public interface Work<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    /** Valores adicionales (conexiones del pool...) que se añaden al volcado como gauges. */
+    @FunctionalInterface
+    public interface GaugeSource {
+        void write(StringBuilder out);
+    }
+
+    public static final String DOMAIN = "com.example.agenda";
+
+    private static final Logger LOG = Logger.getLogger(Metrics.class.getName());
+    private static final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private static final Map<String, GaugeSource> gauges = new ConcurrentHashMap<>();
+    private static volatile long slowThresholdNanos = -1;
+    private static ScheduledExecutorService reporter;
+
+    private Metrics() {}
+
+    public static OperationMetrics operation(String name) {
+        OperationMetrics op = operations.get(name);
+        if (op == null) {
+            op = operations.computeIfAbsent(name, OperationMetrics::new);
+            register("type=DbOperation,name=" + ObjectName.quote(name), op);
+        }
+        return op;
+    }
+
+    /**
+     * Ejecuta {@code work} midiendo su duración en la operación {@code name}. {@code rows} cuenta
+     * las filas del resultado; {@code detail} sólo se usa en el registro de consultas lentas.
+     */
+    public static <T, E extends Exception> T measure(String name, Object detail, ToLongFunction<? super T> rows,
+                                                     Work<T, E> work) throws E {
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = work.run();
+        } catch (Exception | Error e) {
+            operation(name).recordError(System.nanoTime() - start, detail, e);
+            throw e;
+        }
+        operation(name).record(System.nanoTime() - start, rows != null && result != null ? rows.applyAsLong(result) : 0, detail);
+        return result;
+    }
+
+    /**
+     * Detalle para {@link #measure} de un texto escrito por el usuario (búsquedas, nombres, teléfonos):
+     * sólo su longitud, para que el registro de consultas lentas no guarde datos personales.
+     */
+    public static String redact(String text) {
+        return text == null ? null : text.length() + " caracteres";
+    }
+
+    public static void gauge(String name, GaugeSource source) {
+        gauges.put(name, source);
+    }
+
+    public static void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    /** Registra {@code bean} en el servidor JMX de la plataforma como {@code com.example.agenda:<properties>}. */
+    public static void register(String properties, Object bean) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            var server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(bean, name);
+        } catch (JMException e) {
+            LOG.warning("No se pudo registrar " + properties + " en JMX: " + e.getMessage());
+        }
+    }
+
+    public static void unregister(String properties) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            var server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOG.warning("No se pudo quitar " + properties + " de JMX: " + e.getMessage());
+        }
+    }
+
+    static long slowThresholdNanos() {
+        long nanos = slowThresholdNanos;
+        if (nanos < 0) {
+            nanos = TimeUnit.MILLISECONDS.toNanos(Db.getInt("metrics.slowQueryMs", 200));
+            slowThresholdNanos = nanos;
+        }
+        return nanos;
+    }
+
+    /** Todas las métricas en el formato de texto de Prometheus. */
+    public static String exposition() {
+        StringBuilder out = new StringBuilder(4096);
+        List<OperationMetrics> ops = new ArrayList<>(operations.values());
+        ops.sort((a, b) -> a.getName().compareTo(b.getName()));
+
+        out.append("# HELP agenda_db_operation_seconds Latencia de las operaciones de base de datos.\n");
+        out.append("# TYPE agenda_db_operation_seconds summary\n");
+        for (OperationMetrics op : ops) {
+            LatencyHistogram h = op.getLatency();
+            String label = "op=\"" + op.getName() + "\"";
+            sample(out, "agenda_db_operation_seconds", label + ",quantile=\"0.5\"", h.percentileNanos(0.5) / 1e9);
+            sample(out, "agenda_db_operation_seconds", label + ",quantile=\"0.99\"", h.percentileNanos(0.99) / 1e9);
+            sample(out, "agenda_db_operation_seconds_sum", label, h.sumNanos() / 1e9);
+            sample(out, "agenda_db_operation_seconds_count", label, h.count());
+        }
+        out.append("# HELP agenda_db_operation_max_seconds Latencia máxima desde el arranque.\n");
+        out.append("# TYPE agenda_db_operation_max_seconds gauge\n");
+        for (OperationMetrics op : ops) {
+            sample(out, "agenda_db_operation_max_seconds", "op=\"" + op.getName() + "\"", op.getLatency().maxNanos() / 1e9);
+        }
+        out.append("# HELP agenda_db_operation_rows_total Filas devueltas o escritas.\n");
+        out.append("# TYPE agenda_db_operation_rows_total counter\n");
+        for (OperationMetrics op : ops) {
+            sample(out, "agenda_db_operation_rows_total", "op=\"" + op.getName() + "\"", op.getRows());
+        }
+        out.append("# HELP agenda_db_operation_errors_total Llamadas terminadas con excepción.\n");
+        out.append("# TYPE agenda_db_operation_errors_total counter\n");
+        for (OperationMetrics op : ops) {
+            sample(out, "agenda_db_operation_errors_total", "op=\"" + op.getName() + "\"", op.getErrors());
+        }
+        gauges.values().forEach(g -> g.write(out));
+        return out.toString();
+    }
+
+    public static void sample(StringBuilder out, String metric, String labels, double value) {
+        out.append(metric);
+        if (labels != null && !labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value)
+                : Double.toString(value)).append('\n');
+    }
+
+    /** Arranca el volcado periódico si está configurado. Se puede llamar varias veces. */
+    public static synchronized void startReporting() {
+        int interval = Db.getInt("metrics.dumpIntervalSec", 0);
+        String file = Db.getString("metrics.dumpFile", "agenda-metrics.prom");
+        if (reporter != null || interval <= 0 || file.isBlank()) {
+            return;
+        }
+        Path path = Path.of(file);
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "agenda-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        reporter.scheduleWithFixedDelay(() -> dump(path), interval, interval, TimeUnit.SECONDS);
+    }
+
+    /** Detiene el volcado periódico tras escribir un último volcado. */
+    public static synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+            String file = Db.getString("metrics.dumpFile", "agenda-metrics.prom");
+            if (!file.isBlank()) {
+                dump(Path.of(file));
+            }
+        }
+    }
+
+    /** Escribe el volcado de forma atómica (fichero temporal + renombrado) para que nunca se lea a medias. */
+    public static void dump(Path path) {
+        try {
+            Path dir = path.toAbsolutePath().getParent();
+            Path tmp = Files.createTempFile(dir, ".agenda-metrics", ".tmp");
+            try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                w.write(exposition());
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            LOG.warning("No se pudo escribir " + path + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.agenda.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** Latencia, llamadas, filas y errores de una operación de base de datos. */
+public class OperationMetrics implements OperationMetricsMXBean {
+    private static final Logger SLOW_LOG = Logger.getLogger("com.example.agenda.slow");
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /** Registra una llamada terminada; si supera el umbral de lentitud la anota con {@code detail}. */
+    public void record(long nanos, long rowCount, Object detail) {
+        latency.record(nanos);
+        rows.add(rowCount);
+        long slowNanos = Metrics.slowThresholdNanos();
+        if (slowNanos > 0 && nanos >= slowNanos && SLOW_LOG.isLoggable(Level.WARNING)) {
+            SLOW_LOG.warning(String.format("%s tardó %.1f ms%s", name, nanos / 1e6,
+                    detail != null ? " (" + detail + ")" : ""));
+        }
+    }
+
+    public void recordError(long nanos, Object detail, Throwable error) {
+        errors.increment();
+        record(nanos, 0, detail);
+        SLOW_LOG.log(Level.FINE, name + " falló" + (detail != null ? " (" + detail + ")" : ""), error);
+    }
+
+    @Override public long getCount() { return latency.count(); }
+    @Override public long getErrors() { return errors.sum(); }
+    @Override public long getRows() { return rows.sum(); }
+
+    @Override
+    public double getMeanMillis() {
+        long count = latency.count();
+        return count == 0 ? 0 : latency.sumNanos() / 1e6 / count;
+    }
+
+    @Override public double getP50Millis() { return latency.percentileNanos(0.50) / 1e6; }
+    @Override public double getP99Millis() { return latency.percentileNanos(0.99) / 1e6; }
+    @Override public double getMaxMillis() { return latency.maxNanos() / 1e6; }
+}
@@ -0,0 +1,12 @@
+package com.example.agenda.metrics;
+
+/** Vista JMX de una operación: {@code com.example.agenda:type=DbOperation,name=<operación>}. */
+public interface OperationMetricsMXBean {
+    long getCount();
+    long getErrors();
+    long getRows();
+    double getMeanMillis();
+    double getP50Millis();
+    double getP99Millis();
+    double getMaxMillis();
+}
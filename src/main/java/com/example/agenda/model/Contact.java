@@ -0,0 +1,66 @@
+package com.example.agenda.model;
+
+import java.util.List;
+
+/**
+ * Persona con sus teléfonos, inmutable y sin propiedades JavaFX. Es lo que maneja el DAO;
+ * la interfaz sólo crea un {@link Person} (con {@link Person#of(Contact)}) para las filas que muestra.
+ * Las filas de la tabla son resúmenes ({@link #summary}): sólo saben cuántos teléfonos hay.
+ */
+public final class Contact {
+    private final int id;
+    private final String nombre;
+    private final String direccion;
+    private final List<String> telefonos;
+    private final int version;
+    // -1: los teléfonos están en la lista; si no, resumen con sólo su número
+    private final int numTelefonos;
+
+    public Contact(int id, String nombre, String direccion, List<String> telefonos) {
+        this(id, nombre, direccion, telefonos, 0);
+    }
+
+    public Contact(int id, String nombre, String direccion, List<String> telefonos, int version) {
+        this(id, nombre, direccion, telefonos, version, -1);
+    }
+
+    private Contact(int id, String nombre, String direccion, List<String> telefonos, int version, int numTelefonos) {
+        this.id = id;
+        this.nombre = nombre;
+        this.direccion = direccion;
+        // List.copyOf no copia una lista que ya es inmutable, y la vacía es compartida
+        this.telefonos = List.copyOf(telefonos);
+        this.version = version;
+        this.numTelefonos = numTelefonos;
+    }
+
+    /** Persona sin la lista de teléfonos, sólo con cuántos tiene: lo que necesita una fila de la tabla. */
+    public static Contact summary(int id, String nombre, String direccion, int numTelefonos, int version) {
+        return new Contact(id, nombre, direccion, List.of(), version, numTelefonos);
+    }
+
+    /** Id en la base de datos; en un fichero de importación puede ser 0 y se ignora. */
+    public int getId() { return id; }
+    public String getNombre() { return nombre; }
+    public String getDireccion() { return direccion; }
+    /** Vacía en un resumen: ver {@link #hasTelefonos()}. */
+    public List<String> getTelefonos() { return telefonos; }
+    /** {@code false} en un resumen, que no trae la lista de teléfonos. */
+    public boolean hasTelefonos() { return numTelefonos < 0; }
+    public int getNumTelefonos() { return numTelefonos < 0 ? telefonos.size() : numTelefonos; }
+    /** Versión de la fila en {@code Personas}; cada escritura la incrementa (bloqueo optimista). */
+    public int getVersion() { return version; }
+
+    public Contact withTelefonos(List<String> telefonos) {
+        return new Contact(id, nombre, direccion, telefonos, version);
+    }
+
+    public Contact withVersion(int version) {
+        return new Contact(id, nombre, direccion, telefonos, version, numTelefonos);
+    }
+
+    @Override
+    public String toString() {
+        return "Contact{id=" + id + ", nombre=" + nombre + ", direccion=" + direccion + ", telefonos=" + (hasTelefonos() ? telefonos : numTelefonos + " sin cargar") + ", version=" + version + "}";
+    }
+}
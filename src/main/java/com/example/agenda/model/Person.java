@@ -2,13 +2,32 @@ package com.example.agenda.model;
 
 import javafx.beans.property.*;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 
+import java.util.List;
+
+/**
+ * Persona editable para la interfaz. Las propiedades JavaFX y la lista observable de teléfonos
+ * se crean la primera vez que se piden; hasta entonces los valores se guardan como campos simples.
+ * <p>
+ * Una fila creada a partir de un resumen ({@link Contact#summary}) sólo sabe cuántos teléfonos tiene:
+ * la lista está vacía hasta que se carga con {@link #setTelefonos(List)}.
+ */
 public class Person {
-    private final IntegerProperty id = new SimpleIntegerProperty();
-    private final StringProperty nombre = new SimpleStringProperty();
-    private final StringProperty direccion = new SimpleStringProperty();
-    private final ObservableList<String> telefonos = FXCollections.observableArrayList();
+    private int idValue;
+    private String nombreValue;
+    private String direccionValue;
+    private List<String> telefonosValue = List.of();
+    private int version;
+    private boolean telefonosLoaded = true;
+    private int numTelefonosValue;
+
+    private IntegerProperty id;
+    private StringProperty nombre;
+    private StringProperty direccion;
+    private ObservableList<String> telefonos;
+    private IntegerProperty numTelefonos;
 
     public Person(){}
 
@@ -18,19 +37,85 @@ public class Person {
         setDireccion(direccion);
     }
 
-    public int getId() { return id.get(); }
-    public void setId(int value) { id.set(value); }
-    public IntegerProperty idProperty() { return id; }
+    /** Envuelve un {@link Contact} sin copiar sus teléfonos hasta que se modifiquen. */
+    public static Person of(Contact c) {
+        Person p = new Person(c.getId(), c.getNombre(), c.getDireccion());
+        p.telefonosValue = c.getTelefonos();
+        p.version = c.getVersion();
+        p.telefonosLoaded = c.hasTelefonos();
+        p.numTelefonosValue = c.getNumTelefonos();
+        return p;
+    }
 
-    public String getNombre() { return nombre.get(); }
-    public void setNombre(String value) { nombre.set(value); }
-    public StringProperty nombreProperty() { return nombre; }
+    public Contact toContact() {
+        if (!telefonosLoaded) {
+            return Contact.summary(getId(), getNombre(), getDireccion(), numTelefonosValue, version);
+        }
+        return new Contact(getId(), getNombre(), getDireccion(), telefonos != null ? telefonos : telefonosValue, version);
+    }
 
-    public String getDireccion() { return direccion.get(); }
-    public void setDireccion(String value) { direccion.set(value); }
-    public StringProperty direccionProperty() { return direccion; }
+    public int getId() { return id != null ? id.get() : idValue; }
+    public void setId(int value) { if (id != null) id.set(value); else idValue = value; }
+    public IntegerProperty idProperty() {
+        if (id == null) id = new SimpleIntegerProperty(this, "id", idValue);
+        return id;
+    }
 
-    public ObservableList<String> getTelefonos() { return telefonos; }
-    
-    public int getNumTelefonos() { return telefonos.size(); }
+    public String getNombre() { return nombre != null ? nombre.get() : nombreValue; }
+    public void setNombre(String value) { if (nombre != null) nombre.set(value); else nombreValue = value; }
+    public StringProperty nombreProperty() {
+        if (nombre == null) nombre = new SimpleStringProperty(this, "nombre", nombreValue);
+        return nombre;
+    }
+
+    public String getDireccion() { return direccion != null ? direccion.get() : direccionValue; }
+    public void setDireccion(String value) { if (direccion != null) direccion.set(value); else direccionValue = value; }
+    public StringProperty direccionProperty() {
+        if (direccion == null) direccion = new SimpleStringProperty(this, "direccion", direccionValue);
+        return direccion;
+    }
+
+    /** Versión leída de la base de datos: {@code PersonDao.update} falla si otro la ha cambiado. */
+    public int getVersion() { return version; }
+    public void setVersion(int value) { version = value; }
+
+    /** Vacía mientras no estén cargados ({@link #isTelefonosLoaded()}). */
+    public ObservableList<String> getTelefonos() {
+        if (telefonos == null) {
+            telefonos = FXCollections.observableArrayList(telefonosValue);
+            telefonosValue = null;
+            telefonos.addListener((ListChangeListener<String>) change -> updateNumTelefonos());
+        }
+        return telefonos;
+    }
+
+    /** Sustituye los teléfonos; en una fila de resumen, además, quedan cargados. */
+    public void setTelefonos(List<String> values) {
+        telefonosLoaded = true;
+        if (telefonos != null) {
+            telefonos.setAll(values);
+        } else {
+            telefonosValue = List.copyOf(values);
+        }
+        updateNumTelefonos();
+    }
+
+    public boolean isTelefonosLoaded() { return telefonosLoaded; }
+
+    public int getNumTelefonos() {
+        if (!telefonosLoaded) return numTelefonosValue;
+        return telefonos != null ? telefonos.size() : telefonosValue.size();
+    }
+    public ReadOnlyIntegerProperty numTelefonosProperty() {
+        if (numTelefonos == null) numTelefonos = new SimpleIntegerProperty(this, "numTelefonos", getNumTelefonos());
+        return numTelefonos;
+    }
+
+    private void updateNumTelefonos() {
+        if (numTelefonos != null) numTelefonos.set(getNumTelefonos());
+    }
+
+    public Person copy() {
+        return of(toContact());
+    }
 }
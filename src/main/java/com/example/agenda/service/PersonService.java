@@ -0,0 +1,232 @@
+package com.example.agenda.service;
+
+import com.example.agenda.dao.BatchResult;
+import com.example.agenda.dao.PersonDao;
+import com.example.agenda.model.Contact;
+import com.example.agenda.model.Person;
+import javafx.application.Platform;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Ejecuta las llamadas a {@link PersonDao} fuera del hilo de JavaFX.
+ * Las peticiones "con clave" (búsqueda, selección...) cancelan la anterior con la misma clave,
+ * de modo que sólo se publica el resultado de la más reciente.
+ */
+public class PersonService implements AutoCloseable {
+    public static final String SEARCH = "search";
+    public static final String SELECTION = "selection";
+    public static final String PREFETCH = "prefetch";
+
+    @FunctionalInterface
+    public interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    private final PersonDao dao;
+    private final ExecutorService executor;
+    private final Map<String, CompletableFuture<?>> latest = new ConcurrentHashMap<>();
+
+    public PersonService(PersonDao dao) {
+        this(dao, newDbExecutor());
+    }
+
+    public PersonService(PersonDao dao, ExecutorService executor) {
+        this.dao = dao;
+        this.executor = executor;
+    }
+
+    public PersonDao getDao() {
+        return dao;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    public CompletableFuture<Integer> count(String nameLike) {
+        return latest(SEARCH, () -> dao.count(nameLike));
+    }
+
+    /** Ids que coinciden con {@code text} (nombre, dirección o teléfono), por relevancia. */
+    public CompletableFuture<int[]> search(String text) {
+        return latest(SEARCH, () -> dao.search(text));
+    }
+
+    /** Carga el índice de búsqueda en segundo plano; mientras tanto se busca en la base de datos. */
+    public CompletableFuture<Void> buildSearchIndex() {
+        return submit(() -> {
+            dao.rebuildSearchIndex();
+            return null;
+        });
+    }
+
+    public CompletableFuture<List<String>> getTelefonos(int personId) {
+        return latest(SELECTION, () -> dao.getTelefonos(personId));
+    }
+
+    /**
+     * Lee en segundo plano las personas {@code ids} con sus teléfonos para que estén en la caché
+     * cuando se seleccionen. Una llamada nueva cancela la anterior.
+     */
+    public CompletableFuture<Void> prefetch(int[] ids) {
+        return latest(PREFETCH, () -> {
+            dao.findContactsByIds(ids);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Person> save(Person p) {
+        return submit(() -> {
+            dao.save(p);
+            return p;
+        });
+    }
+
+    public CompletableFuture<Void> delete(int personId) {
+        return submit(() -> {
+            dao.delete(personId);
+            return null;
+        });
+    }
+
+    /** Borra {@code p} comprobando su versión (falla con {@code StaleDataException} si otro la cambió). */
+    public CompletableFuture<Void> delete(Person p) {
+        return submit(() -> {
+            dao.delete(p);
+            return null;
+        });
+    }
+
+    /** La persona tal como está ahora en el primario, o {@code null} si ya no existe. */
+    public CompletableFuture<Person> reload(int personId) {
+        return submit(() -> {
+            List<Contact> found = dao.reload(new int[]{personId});
+            return found.isEmpty() ? null : Person.of(found.get(0));
+        });
+    }
+
+    public CompletableFuture<BatchResult> saveAll(Collection<Person> persons) {
+        return submit(() -> dao.saveAll(persons));
+    }
+
+    public CompletableFuture<BatchResult> deleteAll(int[] personIds) {
+        return submit(() -> dao.deleteAll(personIds));
+    }
+
+    /** Añade el teléfono y devuelve la persona actualizada (normalmente desde la caché, sin consulta). */
+    public CompletableFuture<Person> addTelefono(int personId, String telefono) {
+        return submit(() -> {
+            dao.addTelefono(personId, telefono);
+            return dao.findById(personId);
+        });
+    }
+
+    public CompletableFuture<Person> removeTelefono(int personId, String telefono) {
+        return submit(() -> {
+            dao.removeTelefono(personId, telefono);
+            return dao.findById(personId);
+        });
+    }
+
+    /** Ejecuta {@code call} en segundo plano cancelando la petición previa con la misma clave. */
+    public <T> CompletableFuture<T> latest(String key, SqlCall<T> call) {
+        CompletableFuture<T> future = submit(call);
+        CompletableFuture<?> previous = latest.put(key, future);
+        if (previous != null) {
+            previous.cancel(true);
+        }
+        future.whenComplete((r, e) -> latest.remove(key, future));
+        return future;
+    }
+
+    public void cancel(String key) {
+        CompletableFuture<?> previous = latest.remove(key);
+        if (previous != null) {
+            previous.cancel(true);
+        }
+    }
+
+    public <T> CompletableFuture<T> submit(SqlCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(call.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        future.whenComplete((r, e) -> {
+            if (future.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Publica el resultado en el hilo de JavaFX. Las peticiones canceladas (sustituidas por otra
+     * más reciente) no llaman a ninguno de los dos callbacks.
+     */
+    public static <T> void onFx(CompletableFuture<T> future, Consumer<? super T> onSuccess,
+                                Consumer<? super Throwable> onError) {
+        future.whenComplete((result, error) -> {
+            if (future.isCancelled()) {
+                return;
+            }
+            Platform.runLater(() -> {
+                if (error != null) {
+                    onError.accept(unwrap(error));
+                } else {
+                    onSuccess.accept(result);
+                }
+            });
+        });
+    }
+
+    public static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    public static boolean isCancellation(Throwable error) {
+        return unwrap(error) instanceof CancellationException;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private static ExecutorService newDbExecutor() {
+        // En JDK 21+ un hilo virtual por tarea; el pool de conexiones ya limita la concurrencia real
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger n = new AtomicInteger();
+            int threads = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "agenda-db-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
@@ -1,13 +1,11 @@
-DROP TABLE IF EXISTS Telefonos;
-DROP TABLE IF EXISTS Personas;
-
-CREATE TABLE Personas (
+-- Tablas Personas y Telefonos
+CREATE TABLE IF NOT EXISTS Personas (
   id INT AUTO_INCREMENT PRIMARY KEY,
   nombre VARCHAR(100) NOT NULL,
   direccion VARCHAR(200)
 );
 
-CREATE TABLE Telefonos (
+CREATE TABLE IF NOT EXISTS Telefonos (
   id INT AUTO_INCREMENT PRIMARY KEY,
   personaId INT NOT NULL,
   telefono VARCHAR(20) NOT NULL,
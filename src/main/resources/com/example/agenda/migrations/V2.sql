@@ -0,0 +1,6 @@
+-- Índices para los teléfonos de cada persona y la búsqueda por nombre
+-- Teléfonos de una persona en orden (getTelefonos, carga por lotes, JOIN con Personas)
+CREATE INDEX IF NOT EXISTS idx_telefonos_persona ON Telefonos (personaId, id);
+
+-- Búsqueda por prefijo del nombre (findContactsByNamePrefix)
+CREATE INDEX IF NOT EXISTS idx_personas_nombre ON Personas (nombre);
@@ -0,0 +1,13 @@
+-- Versión de cada persona (bloqueo optimista) y registro de cambios para sincronizar clientes
+ALTER TABLE Personas ADD COLUMN IF NOT EXISTS version INT NOT NULL DEFAULT 0;
+
+-- Una fila por escritura confirmada; los clientes leen las de id mayor que la última que vieron.
+-- Sin clave foránea: las bajas se anotan cuando la persona ya no existe
+CREATE TABLE IF NOT EXISTS Cambios (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    personaId INT NOT NULL,
+    version INT NOT NULL,
+    borrado BOOLEAN NOT NULL DEFAULT FALSE,
+    origen VARCHAR(36) NOT NULL,
+    fecha TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
@@ -0,0 +1,6 @@
+-- Teléfono en forma canónica (sólo dígitos, con prefijo de país) para buscar por número
+-- Lo escribe PersonDao al guardar (PhoneNumbers); las filas anteriores las rellena PersonDao.backfillPhoneNumbers
+ALTER TABLE Telefonos ADD COLUMN IF NOT EXISTS numero BIGINT;
+
+-- ¿De quién es este número? (findByPhone). También sirve para encontrar las filas sin rellenar
+CREATE INDEX IF NOT EXISTS idx_telefonos_numero ON Telefonos (numero, personaId);
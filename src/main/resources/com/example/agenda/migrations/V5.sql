@@ -0,0 +1,2 @@
+-- Poda de la tabla Cambios (sync.retentionDays): se borran las filas por fecha
+CREATE INDEX IF NOT EXISTS idx_cambios_fecha ON Cambios (fecha);
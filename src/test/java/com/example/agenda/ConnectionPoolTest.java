@@ -0,0 +1,126 @@
+package com.example.agenda;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Préstamo y devolución de conexiones contra una H2 en memoria. La conexión física detrás de un
+ * préstamo se obtiene con {@code unwrap}, que el pool deja pasar al driver.
+ */
+class ConnectionPoolTest {
+    private static final String OPTIONS = ";MODE=MySQL;DATABASE_TO_UPPER=false;DB_CLOSE_DELAY=-1";
+    private static final long BORROW_TIMEOUT_MS = 300;
+
+    private ConnectionPool pool;
+
+    private ConnectionPool open(int minSize, int maxSize) {
+        pool = new ConnectionPool("jdbc:h2:mem:pool_" + System.nanoTime() + OPTIONS, "sa", "",
+                minSize, maxSize, BORROW_TIMEOUT_MS, 600_000, 1_800_000, 2);
+        return pool;
+    }
+
+    @AfterEach
+    void close() {
+        if (pool != null) pool.close();
+    }
+
+    @Test
+    void exhaustedPoolTimesOut() throws SQLException {
+        open(0, 2);
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        assertEquals(2, pool.getActiveConnections());
+
+        long start = System.nanoTime();
+        assertThrows(SQLTimeoutException.class, pool::getConnection);
+        assertTrue((System.nanoTime() - start) / 1_000_000 >= BORROW_TIMEOUT_MS - 20);
+
+        // Al devolver una, el siguiente préstamo la reutiliza
+        Connection physical = first.unwrap(Connection.class);
+        first.close();
+        try (Connection third = pool.getConnection()) {
+            assertSame(physical, third.unwrap(Connection.class));
+        }
+        second.close();
+        assertEquals(0, pool.getActiveConnections());
+        assertEquals(2, pool.getTotalConnections());
+    }
+
+    @Test
+    void invalidIdleConnectionIsReplaced() throws SQLException {
+        open(0, 1);
+        Connection broken;
+        try (Connection con = pool.getConnection()) {
+            broken = con.unwrap(Connection.class);
+        }
+        // Se cae mientras espera en el pool: isValid falla en el siguiente préstamo
+        broken.close();
+        try (Connection con = pool.getConnection(); Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT 1")) {
+            assertNotSame(broken, con.unwrap(Connection.class));
+            assertTrue(rs.next());
+        }
+        assertEquals(1, pool.getTotalConnections());
+        assertEquals(1, pool.getIdleConnections());
+    }
+
+    @Test
+    void returnedConnectionIsRolledBackAndBackToAutocommit() throws SQLException {
+        open(0, 1);
+        try (Connection con = pool.getConnection(); Statement st = con.createStatement()) {
+            st.execute("CREATE TABLE Prueba (id INT)");
+        }
+        try (Connection con = pool.getConnection()) {
+            con.setAutoCommit(false);
+            try (Statement st = con.createStatement()) {
+                st.executeUpdate("INSERT INTO Prueba VALUES (1)");
+            }
+            // Se devuelve sin commit ni rollback
+        }
+        try (Connection con = pool.getConnection(); Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM Prueba")) {
+            assertTrue(con.getAutoCommit());
+            rs.next();
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    @Test
+    void closeWithLeasesOutClosesThemOnReturn() throws SQLException {
+        open(1, 2);
+        pool.fill();
+        Connection idle;
+        Connection leased = pool.getConnection();
+        try (Connection con = pool.getConnection()) {
+            idle = con.unwrap(Connection.class);
+        }
+        Connection physical = leased.unwrap(Connection.class);
+
+        pool.close();
+        assertTrue(idle.isClosed());
+        assertThrows(SQLException.class, pool::getConnection);
+        // El préstamo sigue sirviendo hasta que se devuelve; entonces se cierra en lugar de volver al pool
+        assertFalse(physical.isClosed());
+        try (Statement st = leased.createStatement()) {
+            st.execute("SELECT 1");
+        }
+        leased.close();
+        assertTrue(physical.isClosed());
+        assertTrue(leased.isClosed());
+        assertEquals(0, pool.getTotalConnections());
+        assertEquals(0, pool.getActiveConnections());
+    }
+}
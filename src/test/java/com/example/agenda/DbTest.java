@@ -0,0 +1,21 @@
+package com.example.agenda;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Opciones que {@link Db} añade a la URL del driver. */
+class DbTest {
+
+    @Test
+    void mariaDbReturnsEveryGeneratedKey() {
+        assertEquals("jdbc:mariadb://localhost:3306/agenda?returnMultiValuesGeneratedIds=true",
+                Db.driverUrl("jdbc:mariadb://localhost:3306/agenda"));
+        assertEquals("jdbc:mariadb://db/agenda?useServerPrepStmts=true&returnMultiValuesGeneratedIds=true",
+                Db.driverUrl("jdbc:mariadb://db/agenda?useServerPrepStmts=true"));
+        String explicit = "jdbc:mariadb://db/agenda?returnMultiValuesGeneratedIds=false";
+        assertEquals(explicit, Db.driverUrl(explicit));
+        String h2 = "jdbc:h2:mem:agenda;MODE=MySQL";
+        assertEquals(h2, Db.driverUrl(h2));
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.agenda;
+
+import com.example.agenda.dao.ChangeLog;
+import com.example.agenda.dao.PersonDao;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Copia local contra un servidor, las dos en H2 en memoria. Sin conexión se simula haciendo que
+ * {@link LocalSync} no pueda obtener el pool del servidor; las rondas se lanzan a mano con
+ * {@link LocalSync#syncOnce()}. Las escrituras locales se hacen como {@link PersonDao}: la fila y su
+ * anotación en {@code Cambios}, en la misma transacción.
+ */
+class LocalSyncTest {
+    private static final String OPTIONS = ";MODE=MySQL;DATABASE_TO_UPPER=false;DB_CLOSE_DELAY=-1";
+    private static final String CLIENT = "cliente-local";
+
+    private ConnectionPool server;
+    private ConnectionPool local;
+    private LocalSync sync;
+    private volatile boolean offline;
+
+    @BeforeEach
+    void open() throws SQLException {
+        long n = System.nanoTime();
+        server = pool("jdbc:h2:mem:sync_server_" + n + OPTIONS);
+        local = pool("jdbc:h2:mem:sync_local_" + n + OPTIONS);
+        sync = new LocalSync("prueba", local, () -> {
+            if (offline) {
+                throw new SQLException("Servidor no disponible");
+            }
+            return server;
+        }, 200, 60_000, 500, 60_000, 60_000, 0);
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        sync.close();
+        for (ConnectionPool pool : new ConnectionPool[]{server, local}) {
+            try (Connection con = pool.getConnection(); Statement st = con.createStatement()) {
+                st.execute("SHUTDOWN");
+            }
+            pool.close();
+        }
+    }
+
+    @Test
+    void offlineEditsArePushedOnReconnect() throws SQLException {
+        int ana = insert(server, "Ana", List.of("600111222", "911222333"));
+        sync.syncOnce();
+        int firstPhone = phoneIds(server, ana).get("600111222");
+
+        offline = true;
+        update(local, ana, "Ana María", List.of("600111222", "699000000"));
+        int nueva = insert(local, "Nueva", List.of("633444555"));
+        assertTrue(nueva >= LocalSync.LOCAL_ID_BASE);
+        assertThrows(SQLException.class, sync::syncOnce);
+        assertEquals(2, sync.getPending());
+
+        offline = false;
+        LocalSync.Round round = sync.syncOnce();
+        assertEquals(2, round.pushed);
+        assertEquals(0, round.conflicts);
+        assertEquals(0, round.pending);
+
+        assertEquals("Ana María", nombre(server, ana));
+        // Sólo cambia el teléfono distinto: el que se conserva mantiene su fila
+        assertEquals(firstPhone, phoneIds(server, ana).get("600111222"));
+        assertEquals(List.of("600111222", "699000000"), new ArrayList<>(phoneIds(server, ana).keySet()));
+
+        // El alta sin conexión pasa a tener el id del servidor, también en local
+        int serverId = idOf(server, "Nueva");
+        assertNotEquals(nueva, serverId);
+        assertEquals("Nueva", nombre(local, serverId));
+        assertNull(nombre(local, nueva));
+        assertEquals(List.of("633444555"), new ArrayList<>(phoneIds(server, serverId).keySet()));
+    }
+
+    @Test
+    void concurrentServerEditWinsAndIsReported() throws SQLException {
+        int ana = insert(server, "Ana", List.of("600111222"));
+        sync.syncOnce();
+
+        offline = true;
+        update(local, ana, "Cambio local", List.of("600111222"));
+        assertThrows(SQLException.class, sync::syncOnce);
+        update(server, ana, "Cambio en el servidor", List.of("600111222", "611000000"));
+
+        offline = false;
+        LocalSync.Round round = sync.syncOnce();
+        assertEquals(0, round.pushed);
+        assertEquals(1, round.conflicts);
+        assertEquals(0, round.pending);
+
+        assertEquals("Cambio en el servidor", nombre(server, ana));
+        assertEquals("Cambio en el servidor", nombre(local, ana));
+        assertEquals(List.of("600111222", "611000000"), new ArrayList<>(phoneIds(local, ana).keySet()));
+        assertEquals(1, sync.drainConflicts().size());
+        try (Connection con = local.getConnection(); Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT datosLocales FROM Conflictos")) {
+            assertTrue(rs.next());
+            assertTrue(rs.getString(1).contains("Cambio local"), rs.getString(1));
+        }
+    }
+
+    @Test
+    void insertIsNotRepeatedWhenTheLocalStepFails() throws SQLException {
+        sync.syncOnce();
+        int nueva = insert(local, "Nueva", List.of("633444555"));
+
+        // Otra transacción local bloquea la fila: el cambio de id falla después de confirmar en el servidor
+        try (Connection ui = local.getConnection()) {
+            ui.setAutoCommit(false);
+            try (Statement st = ui.createStatement()) {
+                st.executeUpdate("UPDATE Personas SET direccion='guardando' WHERE id=" + nueva);
+            }
+            assertThrows(SQLException.class, sync::syncOnce);
+            ui.rollback();
+        }
+        assertEquals(1, count(server, "Nueva"));
+
+        sync.syncOnce();
+        sync.syncOnce();
+        assertEquals(1, count(server, "Nueva"));
+        int serverId = idOf(server, "Nueva");
+        assertEquals("Nueva", nombre(local, serverId));
+        assertNull(nombre(local, nueva));
+        assertEquals(0, sync.getPending());
+    }
+
+    private static int count(ConnectionPool pool, String nombre) throws SQLException {
+        try (Connection con = pool.getConnection();
+             PreparedStatement ps = con.prepareStatement("SELECT COUNT(*) FROM Personas WHERE nombre=?")) {
+            ps.setString(1, nombre);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private static ConnectionPool pool(String url) throws SQLException {
+        ConnectionPool pool = new ConnectionPool(url, "sa", "", 1, 4, 5_000, 600_000, 1_800_000, 2);
+        try (Connection con = pool.getConnection()) {
+            Migrations.migrate(con);
+        }
+        return pool;
+    }
+
+    private static int insert(ConnectionPool pool, String nombre, List<String> phones) throws SQLException {
+        try (Connection con = pool.getConnection()) {
+            con.setAutoCommit(false);
+            int id;
+            try (PreparedStatement ps = con.prepareStatement("INSERT INTO Personas (nombre, direccion) VALUES (?, '')",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                ps.setString(1, nombre);
+                ps.executeUpdate();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    keys.next();
+                    id = keys.getInt(1);
+                }
+            }
+            PersonDao.writePhones(con, id, phones);
+            ChangeLog.record(con, CLIENT, id, 0, false);
+            con.commit();
+            return id;
+        }
+    }
+
+    private static void update(ConnectionPool pool, int id, String nombre, List<String> phones) throws SQLException {
+        try (Connection con = pool.getConnection()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement("UPDATE Personas SET nombre=?, version=version+1 WHERE id=?")) {
+                ps.setString(1, nombre);
+                ps.setInt(2, id);
+                ps.executeUpdate();
+            }
+            PersonDao.writePhones(con, id, phones);
+            ChangeLog.record(con, CLIENT, id, 0, false);
+            con.commit();
+        }
+    }
+
+    private static String nombre(ConnectionPool pool, int id) throws SQLException {
+        try (Connection con = pool.getConnection();
+             PreparedStatement ps = con.prepareStatement("SELECT nombre FROM Personas WHERE id=?")) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private static int idOf(ConnectionPool pool, String nombre) throws SQLException {
+        try (Connection con = pool.getConnection();
+             PreparedStatement ps = con.prepareStatement("SELECT id FROM Personas WHERE nombre=?")) {
+            ps.setString(1, nombre);
+            try (ResultSet rs = ps.executeQuery()) {
+                assertTrue(rs.next(), "No existe " + nombre);
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    /** Teléfono -> id de su fila, en el orden en que se guardaron. */
+    private static Map<String, Integer> phoneIds(ConnectionPool pool, int personId) throws SQLException {
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        try (Connection con = pool.getConnection();
+             PreparedStatement ps = con.prepareStatement("SELECT telefono, id FROM Telefonos WHERE personaId=? ORDER BY id")) {
+            ps.setInt(1, personId);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) ids.put(rs.getString(1), rs.getInt(2));
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.agenda;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Migraciones sobre una H2 en memoria vacía: se aplican todas una vez y, después, las consultas de
+ * {@link AgendaDB#INDEXED_QUERIES} usan sus índices según {@code EXPLAIN}.
+ */
+class MigrationsTest {
+    private Connection con;
+
+    @BeforeEach
+    void open() throws SQLException {
+        con = DriverManager.getConnection("jdbc:h2:mem:migrations_" + System.nanoTime()
+                + ";MODE=MySQL;DATABASE_TO_UPPER=false", "sa", "");
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        con.close();
+    }
+
+    @Test
+    void appliesEveryMigrationOnce() throws SQLException {
+        int last = Migrations.available().size();
+        assertTrue(last >= 4);
+        assertEquals(IntStream.rangeClosed(1, last).boxed().collect(Collectors.toList()), Migrations.migrate(con));
+        assertEquals(List.of(), Migrations.migrate(con));
+    }
+
+    @Test
+    void indexedQueriesDoNotScanTheTable() throws SQLException {
+        Migrations.migrate(con);
+        try (Statement st = con.createStatement()) {
+            for (String[] q : AgendaDB.INDEXED_QUERIES) {
+                String plan = AgendaDB.explain(st, q[1]);
+                assertTrue(AgendaDB.usesIndex(plan, q[2]), q[0] + " no usa " + q[2] + ":\n" + plan);
+                assertFalse(plan.contains("tableScan"), q[0] + " recorre la tabla:\n" + plan);
+            }
+        }
+    }
+
+    @Test
+    void changedMigrationIsRejected() throws SQLException {
+        Migrations.migrate(con);
+        try (Statement st = con.createStatement()) {
+            st.executeUpdate("UPDATE " + Migrations.TABLE + " SET checksum = REPEAT('0', 64) WHERE version = 2");
+        }
+        SQLException e = assertThrows(SQLException.class, () -> Migrations.migrate(con));
+        assertTrue(e.getMessage().contains("V2"), e.getMessage());
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.agenda;
+
+import com.example.agenda.dao.PersonDao;
+import com.example.agenda.model.Person;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Lecturas repartidas entre réplicas con dos H2 en memoria haciendo de réplicas de un tercero (el
+ * primario). Entre ellas no hay replicación: cada una tiene sus propias tablas, así que una persona
+ * guardada sólo se ve en el primario, lo que permite saber de dónde se leyó. La última prueba apaga
+ * una de las réplicas.
+ */
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class ReplicaRoutingTest {
+    private static final String OPTIONS = ";MODE=MySQL;DATABASE_TO_UPPER=false;DB_CLOSE_DELAY=-1";
+    private static final String PRIMARY = "jdbc:h2:mem:routing_primary" + OPTIONS;
+    private static final String REPLICA_A = "jdbc:h2:mem:routing_a" + OPTIONS;
+    // Sólo se abre si ya existe: tras apagarla, la réplica queda fuera de servicio
+    private static final String REPLICA_B = "jdbc:h2:mem:routing_b" + OPTIONS + ";IFEXISTS=TRUE";
+    private static final long STICKY_MS = 300;
+
+    private static Connection keepReplicaB;
+
+    @BeforeAll
+    static void configure() throws SQLException {
+        Db.shutdown();
+        keepReplicaB = DriverManager.getConnection(REPLICA_B.replace(";IFEXISTS=TRUE", ""), "sa", "");
+        Db.setTestMode(true);
+        Db.setProperty("test.db.url", PRIMARY);
+        Db.setProperty("test.db.replicas", "a,b");
+        Db.setProperty("test.db.replica.a.url", REPLICA_A);
+        Db.setProperty("test.db.replica.b.url", REPLICA_B);
+        Db.setProperty("test.db.replica.stickyMs", String.valueOf(STICKY_MS));
+        Db.setProperty("test.db.replica.healthCheckMs", "60000");
+    }
+
+    @AfterAll
+    static void restore() throws SQLException {
+        Db.shutdown();
+        for (String key : new String[]{"test.db.url", "test.db.replicas", "test.db.replica.a.url",
+                "test.db.replica.b.url", "test.db.replica.stickyMs", "test.db.replica.healthCheckMs"}) {
+            Db.setProperty(key, null);
+        }
+        Db.setTestMode(false);
+        keepReplicaB.close();
+    }
+
+    @Test
+    @Order(1)
+    void readsGoToReplicasAndOwnWritesToPrimary() throws Exception {
+        PersonDao dao = new PersonDao();
+        Person p = new Person(0, "Réplica", "Calle 1");
+        dao.insert(p);
+
+        // Justo después de guardar se lee del primario: la persona se ve aunque las réplicas no la tengan
+        assertEquals("routing_primary", readSource());
+        dao.getPersonCache().remove(p.getId());
+        assertNotNull(dao.findContact(p.getId()));
+
+        Thread.sleep(STICKY_MS + 100);
+        Set<String> used = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            used.add(readSource());
+        }
+        assertEquals(Set.of("routing_a", "routing_b"), used);
+        dao.getPersonCache().remove(p.getId());
+        assertNull(dao.findContact(p.getId()));
+
+        // Una escritura vuelve a llevar las lecturas al primario durante stickyMs
+        Db.markWrite();
+        assertEquals("routing_primary", readSource());
+    }
+
+    @Test
+    @Order(2)
+    void replicaThatStopsAnsweringIsSkipped() throws Exception {
+        Thread.sleep(STICKY_MS + 100);
+        readSource();
+        try (Statement st = keepReplicaB.createStatement()) {
+            st.execute("SHUTDOWN");
+        }
+        Set<String> used = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            used.add(readSource());
+        }
+        assertTrue(used.contains("routing_a"));
+        assertFalse(used.contains("routing_b"), "La réplica apagada no debe recibir lecturas: " + used);
+    }
+
+    /** Base de datos de la que lee {@link Db#getReadConnection()}. */
+    private static String readSource() throws SQLException {
+        try (Connection con = Db.getReadConnection()) {
+            return con.getMetaData().getURL().substring("jdbc:h2:mem:".length());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.agenda;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Caché LRU de sentencias preparadas de cada conexión física, con sitio para dos. La sentencia del
+ * driver detrás de la que entrega el pool se obtiene con {@code unwrap}.
+ */
+class StatementCacheTest {
+    private static final String OPTIONS = ";MODE=MySQL;DATABASE_TO_UPPER=false;DB_CLOSE_DELAY=-1";
+    private static final String A = "SELECT 1";
+    private static final String B = "SELECT 2";
+    private static final String C = "SELECT 3";
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void open() {
+        // Una sola conexión: todas las pruebas usan la misma caché
+        pool = new ConnectionPool("jdbc:h2:mem:statements_" + System.nanoTime() + OPTIONS, "sa", "",
+                0, 1, 5_000, 600_000, 1_800_000, 2, 2);
+    }
+
+    @AfterEach
+    void close() {
+        pool.close();
+    }
+
+    @Test
+    void repeatedSqlReusesTheStatement() throws SQLException {
+        PreparedStatement first = physical(A);
+        assertSame(first, physical(A));
+        assertSame(first, physical(A));
+        assertFalse(first.isClosed());
+        assertEquals(2, pool.getStatementCacheHits());
+        assertEquals(1, pool.getStatementCacheMisses());
+
+        // Mientras está en uso, otra igual en la misma conexión es una sentencia aparte que no se guarda
+        try (Connection con = pool.getConnection(); PreparedStatement held = con.prepareStatement(A)) {
+            PreparedStatement extra;
+            try (PreparedStatement second = con.prepareStatement(A)) {
+                extra = second.unwrap(PreparedStatement.class);
+                assertNotSame(first, extra);
+            }
+            assertTrue(extra.isClosed());
+            assertSame(first, held.unwrap(PreparedStatement.class));
+        }
+        assertSame(first, physical(A));
+    }
+
+    @Test
+    void leastRecentlyUsedStatementIsEvictedAndClosed() throws SQLException {
+        PreparedStatement a = physical(A);
+        PreparedStatement b = physical(B);
+        assertSame(a, physical(A));
+        // A se usó después que B: C expulsa a B
+        PreparedStatement c = physical(C);
+        assertTrue(b.isClosed());
+        assertFalse(a.isClosed());
+        assertFalse(c.isClosed());
+        assertSame(a, physical(A));
+        assertNotSame(b, physical(B));
+    }
+
+    @Test
+    void statementEvictedWhileInUseIsClosedOnReturn() throws SQLException {
+        try (Connection con = pool.getConnection()) {
+            PreparedStatement held = con.prepareStatement(A);
+            PreparedStatement a = held.unwrap(PreparedStatement.class);
+            con.prepareStatement(B).close();
+            con.prepareStatement(C).close();
+            // Expulsada, pero quien la tiene puede seguir usándola
+            assertFalse(a.isClosed());
+            try (ResultSet rs = held.executeQuery()) {
+                assertTrue(rs.next());
+            }
+            held.close();
+            assertTrue(a.isClosed());
+        }
+        assertEquals(3, pool.getStatementCacheMisses());
+    }
+
+    @Test
+    void statementWithChangedSettingsIsNotReused() throws SQLException {
+        PreparedStatement dirty;
+        try (Connection con = pool.getConnection(); PreparedStatement ps = con.prepareStatement(A)) {
+            ps.setMaxRows(1);
+            dirty = ps.unwrap(PreparedStatement.class);
+        }
+        assertTrue(dirty.isClosed());
+        PreparedStatement clean = physical(A);
+        assertNotSame(dirty, clean);
+        assertEquals(0, clean.getMaxRows());
+        assertSame(clean, physical(A));
+        assertEquals(1, pool.getStatementCacheHits());
+    }
+
+    /** Prepara y devuelve {@code sql} en un préstamo; da la sentencia del driver. */
+    private PreparedStatement physical(String sql) throws SQLException {
+        try (Connection con = pool.getConnection(); PreparedStatement ps = con.prepareStatement(sql)) {
+            return ps.unwrap(PreparedStatement.class);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.agenda.bulk;
+
+import com.example.agenda.Db;
+import com.example.agenda.model.Contact;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Importa y vuelve a exportar en una H2 en memoria propia (clave {@code test.db.url}), con lotes que
+ * no dividen exactamente el fichero para que el último quede incompleto.
+ */
+class BulkRoundTripTest {
+    private static final int CONTACTS = 1_203;
+
+    @BeforeAll
+    static void configure() {
+        Db.shutdown();
+        Db.setTestMode(true);
+        Db.setProperty("test.db.url", "jdbc:h2:mem:bulk_" + System.nanoTime()
+                + ";MODE=MySQL;DATABASE_TO_UPPER=false;DB_CLOSE_DELAY=-1");
+    }
+
+    @AfterAll
+    static void restore() {
+        Db.shutdown();
+        Db.setProperty("test.db.url", null);
+        Db.setTestMode(false);
+    }
+
+    @Test
+    void importedContactsExportUnchanged() throws IOException, SQLException {
+        List<Contact> source = new ArrayList<>();
+        for (int i = 0; i < CONTACTS; i++) {
+            List<String> phones = i % 3 == 0 ? List.of() : List.of("600" + i, "+34 91" + i);
+            source.add(new Contact(0, "Persona, " + i, "Calle \"" + i + "\"", phones));
+        }
+        StringWriter csv = new StringWriter();
+        ContactWriter writer = ContactFormat.CSV.writer(csv);
+        for (Contact c : source) writer.write(c);
+
+        BulkStats imported = new BulkImporter(500, 1000).importFrom(new StringReader(csv.toString()), ContactFormat.CSV);
+        assertEquals(CONTACTS, imported.getContacts());
+        assertEquals(source.stream().mapToLong(c -> c.getTelefonos().size()).sum(), imported.getPhones());
+        try (Connection con = Db.getConnection(); Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(DISTINCT personaId) FROM Cambios")) {
+            rs.next();
+            assertEquals(CONTACTS, rs.getInt(1));
+        }
+
+        for (ContactFormat format : ContactFormat.values()) {
+            StringWriter out = new StringWriter();
+            BulkStats exported = new BulkExporter(100).exportTo(out, format);
+            assertEquals(CONTACTS, exported.getContacts());
+            ContactReader reader = format.reader(new StringReader(out.toString()));
+            List<String> read = new ArrayList<>();
+            for (Contact c; (c = reader.next()) != null; ) read.add(withoutId(c));
+            List<String> expected = new ArrayList<>();
+            source.forEach(c -> expected.add(withoutId(c)));
+            assertEquals(expected, read, format.name());
+        }
+    }
+
+    // El id lo da la base de datos; la exportación sale en orden de id, el mismo del fichero
+    private static String withoutId(Contact c) {
+        return c.getNombre() + " / " + c.getDireccion() + " / " + c.getTelefonos();
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.agenda.bulk;
+
+import com.example.agenda.model.Contact;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Comillas y separadores de {@link CsvContactWriter} y {@link CsvContactReader} (RFC 4180). */
+class CsvContactTest {
+
+    @Test
+    void quotedFieldsSurviveTheRoundTrip() throws IOException {
+        List<Contact> written = List.of(
+                new Contact(1, "Pérez, Ana", "Calle \"Mayor\", 3", List.of("600111222", "+34 911 222 333")),
+                new Contact(2, "Luis", "Piso 2\nPuerta B", List.of()),
+                new Contact(3, "Windows", "Línea 1\r\nLínea 2", List.of("(0034) 600-000-000")),
+                new Contact(4, "\"Comillas\"", "", List.of("611")));
+        StringWriter out = new StringWriter();
+        ContactWriter writer = ContactFormat.CSV.writer(out);
+        for (Contact c : written) writer.write(c);
+
+        List<Contact> read = readAll(out.toString());
+        assertEquals(written.size(), read.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(written.get(i).toString(), read.get(i).toString());
+        }
+    }
+
+    @Test
+    void writerQuotesOnlyWhenNeeded() throws IOException {
+        StringWriter out = new StringWriter();
+        ContactFormat.CSV.writer(out).write(new Contact(7, "Ana", "a, \"b\"", List.of("1", "2")));
+        assertEquals("id,nombre,direccion,telefonos\n7,Ana,\"a, \"\"b\"\"\",1|2\n", out.toString());
+    }
+
+    @Test
+    void readsColumnsInAnyOrderWithBomAndBlankLines() throws IOException {
+        List<Contact> read = readAll("﻿telefonos,nombre\r\n600|700,\"Pérez, Ana\"\r\n\r\n,Luis\r\n");
+        assertEquals(2, read.size());
+        assertEquals("Pérez, Ana", read.get(0).getNombre());
+        assertEquals(List.of("600", "700"), read.get(0).getTelefonos());
+        assertEquals(0, read.get(0).getId());
+        assertNull(read.get(0).getDireccion());
+        assertEquals(List.of(), read.get(1).getTelefonos());
+    }
+
+    @Test
+    void malformedInputIsRejectedWithItsLine() {
+        assertThrows(IOException.class, () -> readAll("id,direccion\n1,Calle\n"));
+        IOException unclosed = assertThrows(IOException.class, () -> readAll("nombre\nAna\n\"Luis\n"));
+        assertTrue(unclosed.getMessage().startsWith("Línea 3"), unclosed.getMessage());
+        IOException noName = assertThrows(IOException.class, () -> readAll("id,nombre\n1,Ana\n2,\n"));
+        assertTrue(noName.getMessage().startsWith("Línea 3"), noName.getMessage());
+        assertThrows(IOException.class, () -> readAll("id,nombre\nx,Ana\n"));
+    }
+
+    private static List<Contact> readAll(String csv) throws IOException {
+        ContactReader reader = ContactFormat.CSV.reader(new StringReader(csv));
+        List<Contact> read = new ArrayList<>();
+        for (Contact c; (c = reader.next()) != null; ) read.add(c);
+        return read;
+    }
+}
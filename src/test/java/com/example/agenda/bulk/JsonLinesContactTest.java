@@ -0,0 +1,62 @@
+package com.example.agenda.bulk;
+
+import com.example.agenda.model.Contact;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/** Escapes de {@link JsonLinesContactWriter} y lo que acepta {@link JsonLinesContactReader}. */
+class JsonLinesContactTest {
+
+    @Test
+    void escapedTextSurvivesTheRoundTrip() throws IOException {
+        List<Contact> written = List.of(
+                new Contact(1, "Ana \"la\" \\ Pérez", "Piso 2\nPuerta\tB\r\u0001", List.of("600111222", "+34 911")),
+                new Contact(2, "Sin dirección", null, List.of()),
+                new Contact(3, "Ñandú €", "{[,:]}", List.of("")));
+        StringWriter out = new StringWriter();
+        ContactWriter writer = ContactFormat.JSONL.writer(out);
+        for (Contact c : written) writer.write(c);
+        assertEquals(written.size(), out.toString().split("\n").length);
+
+        List<Contact> read = readAll(out.toString());
+        assertEquals(written.size(), read.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(written.get(i).toString(), read.get(i).toString());
+        }
+    }
+
+    @Test
+    void ignoresUnknownKeysAndAcceptsNulls() throws IOException {
+        List<Contact> read = readAll("{ \"extra\": {\"a\": [1, 2]}, \"nombre\": \"Ana\", \"id\": 5, "
+                + "\"direccion\": null, \"telefonos\": null, \"activo\": true }\n\n{\"nombre\":\"Luis\",\"telefonos\":[\"6\\u0030\"]}\n");
+        assertEquals(2, read.size());
+        assertEquals(5, read.get(0).getId());
+        assertNull(read.get(0).getDireccion());
+        assertEquals(List.of(), read.get(0).getTelefonos());
+        assertEquals(List.of("60"), read.get(1).getTelefonos());
+    }
+
+    @Test
+    void malformedLinesAreRejected() {
+        assertThrows(IOException.class, () -> readAll("{\"id\":1}\n"));
+        assertThrows(IOException.class, () -> readAll("{\"nombre\":\"Ana\"\n"));
+        assertThrows(IOException.class, () -> readAll("{\"nombre\":\"Ana}\n"));
+        assertThrows(IOException.class, () -> readAll("{\"nombre\":\"Ana\",\"id\":\"x\"}\n"));
+    }
+
+    private static List<Contact> readAll(String jsonl) throws IOException {
+        ContactReader reader = ContactFormat.JSONL.reader(new StringReader(jsonl));
+        List<Contact> read = new ArrayList<>();
+        for (Contact c; (c = reader.next()) != null; ) read.add(c);
+        return read;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.agenda.dao;
+
+import com.example.agenda.Db;
+import com.example.agenda.model.Contact;
+import com.example.agenda.model.Person;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Huecos en los ids de {@code Cambios}: un lote deshecho deja ids que no llegan nunca y una transacción
+ * lenta confirma su id después de otros posteriores. Cada prueba usa su propio feed sobre una H2 en
+ * memoria propia; las escrituras de "otro cliente" se hacen con un segundo {@link PersonDao}.
+ */
+class ChangeFeedTest {
+    private static final long GAP_TIMEOUT_MS = 300;
+
+    @BeforeAll
+    static void configure() {
+        Db.shutdown();
+        Db.setTestMode(true);
+        Db.setProperty("test.db.url", "jdbc:h2:mem:feed_" + System.nanoTime()
+                + ";MODE=MySQL;DATABASE_TO_UPPER=false;DB_CLOSE_DELAY=-1");
+    }
+
+    @AfterAll
+    static void restore() {
+        Db.shutdown();
+        Db.setProperty("test.db.url", null);
+        Db.setTestMode(false);
+    }
+
+    @Test
+    void rolledBackBatchLeavesGapsThatExpire() throws SQLException, InterruptedException {
+        PersonDao other = new PersonDao();
+        // Con poda: el hueco justo tras el cursor no debe tomarse por cambios ya borrados
+        ChangeFeed feed = new ChangeFeed(new PersonDao(), 1000, GAP_TIMEOUT_MS, 7);
+        feed.start();
+
+        // Como un lote de importación que falla: sus 500 anotaciones se deshacen con él
+        try (Connection con = Db.getConnection()) {
+            con.setAutoCommit(false);
+            ChangeLog.recordAll(con, "importacion", IntStream.rangeClosed(1, 500).toArray(), null, false);
+            con.rollback();
+        }
+        Person p = new Person(0, "Tras el lote", "Calle 1");
+        other.insert(p);
+
+        ChangeFeed.Delta delta = feed.poll();
+        assertFalse(delta.isFullReload());
+        assertEquals(List.of(p.getId()), ids(delta));
+        assertEquals(500, feed.getGapCount());
+
+        Thread.sleep(GAP_TIMEOUT_MS + 100);
+        assertTrue(feed.poll().isEmpty());
+        assertEquals(0, feed.getGapCount());
+    }
+
+    @Test
+    void changeCommittedAfterALaterOneIsDelivered() throws SQLException {
+        PersonDao other = new PersonDao();
+        ChangeFeed feed = new ChangeFeed(new PersonDao(), 1000, 60_000);
+        feed.start();
+
+        try (Connection slow = Db.getConnection()) {
+            slow.setAutoCommit(false);
+            int id;
+            try (PreparedStatement ps = slow.prepareStatement("INSERT INTO Personas (nombre, direccion) VALUES ('Lenta', '')",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                ps.executeUpdate();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    keys.next();
+                    id = keys.getInt(1);
+                }
+            }
+            ChangeLog.record(slow, "lento", id, 0, false);
+
+            Person fast = new Person(0, "Rápida", "");
+            other.insert(fast);
+            assertEquals(List.of(fast.getId()), ids(feed.poll()));
+            assertEquals(1, feed.getGapCount());
+
+            slow.commit();
+            ChangeFeed.Delta delta = feed.poll();
+            assertEquals(List.of(id), ids(delta));
+            assertEquals("Lenta", delta.getUpdated().get(0).getNombre());
+            assertEquals(0, feed.getGapCount());
+        }
+    }
+
+    private static List<Integer> ids(ChangeFeed.Delta delta) {
+        return delta.getUpdated().stream().map(Contact::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.agenda.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Sondeo lineal de {@link LongIntsMap}: las claves que caen en la misma posición se buscan con
+ * {@code slot} para forzar colisiones y cadenas que dan la vuelta al final del array.
+ */
+class LongIntsMapTest {
+    // capacity 8 -> 16 posiciones
+    private static final int CAPACITY = 8;
+    private static final int LAST_SLOT = 15;
+
+    @Test
+    void collidingKeysAreFoundAfterDeletesAcrossTheEnd() {
+        LongIntsMap map = new LongIntsMap(CAPACITY);
+        // Tres claves con la última posición como casa (ocupan 15, 0 y 1) y una con casa 0 (acaba en 2)
+        List<Long> lastHome = keysWithHome(map, LAST_SLOT, 3);
+        long zeroHome = keysWithHome(map, 0, 1).get(0);
+        for (long k : lastHome) map.put(k, new int[]{(int) k});
+        map.put(zeroHome, new int[]{-1});
+        assertEquals(4, map.size());
+
+        map.remove(lastHome.get(0));
+        assertNull(map.get(lastHome.get(0)));
+        assertArrayEquals(new int[]{(int) (long) lastHome.get(1)}, map.get(lastHome.get(1)));
+        assertArrayEquals(new int[]{(int) (long) lastHome.get(2)}, map.get(lastHome.get(2)));
+        assertArrayEquals(new int[]{-1}, map.get(zeroHome));
+
+        map.remove(lastHome.get(1));
+        map.remove(zeroHome);
+        assertArrayEquals(new int[]{(int) (long) lastHome.get(2)}, map.get(lastHome.get(2)));
+        assertNull(map.get(zeroHome));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void removeValuesKeepsTheRestOfTheChainReachable() {
+        LongIntsMap map = new LongIntsMap(CAPACITY);
+        List<Long> lastHome = keysWithHome(map, LAST_SLOT, 4);
+        for (int i = 0; i < lastHome.size(); i++) {
+            map.put(lastHome.get(i), new int[]{i, 100 + i});
+        }
+        // Dueños 0 y 2: una en la última posición y otra tras dar la vuelta
+        map.removeValues(Set.of(0, 102));
+        assertEquals(2, map.size());
+        assertNull(map.get(lastHome.get(0)));
+        assertNull(map.get(lastHome.get(2)));
+        assertArrayEquals(new int[]{1, 101}, map.get(lastHome.get(1)));
+        assertArrayEquals(new int[]{3, 103}, map.get(lastHome.get(3)));
+    }
+
+    @Test
+    void fullMapIsClearedBeforeANewKey() {
+        LongIntsMap map = new LongIntsMap(4);
+        for (long k = 1; k <= 4; k++) map.put(k, new int[]{(int) k});
+        // Cambiar una clave que ya está no cuenta como nueva
+        map.put(2, new int[]{20});
+        assertEquals(4, map.size());
+        assertArrayEquals(new int[]{20}, map.get(2));
+
+        map.put(5, new int[]{5});
+        assertEquals(1, map.size());
+        assertNull(map.get(1));
+        assertArrayEquals(new int[]{5}, map.get(5));
+    }
+
+    @Test
+    void behavesLikeAHashMap() {
+        LongIntsMap map = new LongIntsMap(512);
+        Map<Long, int[]> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int op = 0; op < 20_000; op++) {
+            long key = random.nextInt(400) - 200L;
+            int action = random.nextInt(10);
+            if (action < 5) {
+                int[] value = {random.nextInt(50)};
+                map.put(key, value);
+                expected.put(key, value);
+            } else if (action < 9) {
+                map.remove(key);
+                expected.remove(key);
+            } else {
+                int owner = random.nextInt(50);
+                map.removeValues(Set.of(owner));
+                expected.values().removeIf(v -> v[0] == owner);
+            }
+            if (op % 100 == 0) {
+                for (long k = -200; k < 200; k++) {
+                    assertArrayEquals(expected.get(k), map.get(k), "clave " + k + " tras " + op + " operaciones");
+                }
+                assertEquals(expected.size(), map.size());
+            }
+        }
+    }
+
+    private static List<Long> keysWithHome(LongIntsMap map, int home, int n) {
+        List<Long> keys = new ArrayList<>(n);
+        for (long k = 1; keys.size() < n; k++) {
+            if (map.slot(k) == home) keys.add(k);
+        }
+        return keys;
+    }
+}
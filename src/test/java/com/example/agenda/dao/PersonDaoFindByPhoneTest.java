@@ -0,0 +1,65 @@
+package com.example.agenda.dao;
+
+import com.example.agenda.Db;
+import com.example.agenda.model.Contact;
+import com.example.agenda.model.Person;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * {@link PersonDao#findByPhone(String)} guarda en memoria también los números sin dueño; cada
+ * escritura de teléfonos debe quitar de ahí los que cambian. Usa una H2 en memoria propia.
+ */
+class PersonDaoFindByPhoneTest {
+
+    @BeforeAll
+    static void configure() {
+        Db.shutdown();
+        Db.setTestMode(true);
+        Db.setProperty("test.db.url", "jdbc:h2:mem:phones_" + System.nanoTime()
+                + ";MODE=MySQL;DATABASE_TO_UPPER=false;DB_CLOSE_DELAY=-1");
+    }
+
+    @AfterAll
+    static void restore() {
+        Db.shutdown();
+        Db.setProperty("test.db.url", null);
+        Db.setTestMode(false);
+    }
+
+    @Test
+    void phoneWritesInvalidateCachedOwners() throws SQLException {
+        PersonDao dao = new PersonDao();
+        Person ana = new Person(0, "Ana", "Calle 1");
+        ana.getTelefonos().add("600 11 12 22");
+        dao.insert(ana);
+
+        assertEquals(List.of(ana.getId()), owners(dao, "+34 600-111-222"));
+        assertEquals(List.of(), owners(dao, "611000000"));
+        // Las dos respuestas se repiten desde memoria
+        assertEquals(List.of(ana.getId()), owners(dao, "0034600111222"));
+        assertEquals(List.of(), owners(dao, "611 000 000"));
+
+        dao.addTelefono(ana.getId(), "611 00 00 00");
+        assertEquals(List.of(ana.getId()), owners(dao, "611000000"));
+
+        dao.removeTelefono(ana.getId(), "600 11 12 22");
+        assertEquals(List.of(), owners(dao, "600111222"));
+
+        Person luis = new Person(0, "Luis", "Calle 2");
+        luis.getTelefonos().add("+34 611 000 000");
+        dao.insert(luis);
+        assertEquals(List.of(ana.getId(), luis.getId()), owners(dao, "611000000"));
+    }
+
+    private static List<Integer> owners(PersonDao dao, String telefono) throws SQLException {
+        return dao.findByPhone(telefono).stream().map(Contact::getId).collect(Collectors.toList());
+    }
+}
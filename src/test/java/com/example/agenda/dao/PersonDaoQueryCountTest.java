@@ -0,0 +1,101 @@
+package com.example.agenda.dao;
+
+import com.example.agenda.Db;
+import com.example.agenda.model.Person;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * El número de consultas de {@link PersonDao#findAll(String)} no depende del número de personas
+ * con las estrategias {@code JOIN} y {@code BATCHED}. Las consultas se cuentan con las estadísticas
+ * de H2 ({@code INFORMATION_SCHEMA.QUERY_STATISTICS}) sobre la base de datos en memoria por defecto.
+ */
+class PersonDaoQueryCountTest {
+    private static final String FEW = "QueryCountDiez";
+    private static final String MANY = "QueryCountMil";
+
+    private interface SqlWork {
+        void run() throws SQLException;
+    }
+
+    @BeforeAll
+    static void insertPersons() throws SQLException {
+        PersonDao dao = new PersonDao();
+        dao.saveAll(persons(FEW, 10));
+        dao.saveAll(persons(MANY, 1000));
+    }
+
+    @AfterAll
+    static void shutdown() {
+        Db.shutdown();
+    }
+
+    @Test
+    void joinRunsOneQueryWhateverTheSize() throws SQLException {
+        PersonDao dao = new PersonDao(PhoneFetchStrategy.JOIN);
+        long few = countQueries(() -> findAll(dao, FEW, 10));
+        long many = countQueries(() -> findAll(dao, MANY, 1000));
+        assertEquals(1, few);
+        assertEquals(few, many);
+    }
+
+    @Test
+    void batchedRunsOneQueryPerChunk() throws SQLException {
+        PersonDao dao = new PersonDao(PhoneFetchStrategy.BATCHED, 1000);
+        long few = countQueries(() -> findAll(dao, FEW, 10));
+        long many = countQueries(() -> findAll(dao, MANY, 1000));
+        assertEquals(2, few);
+        assertEquals(few, many);
+    }
+
+    @Test
+    void perPersonGrowsWithTheSize() throws SQLException {
+        PersonDao dao = new PersonDao(PhoneFetchStrategy.PER_PERSON);
+        assertEquals(1 + 10, countQueries(() -> findAll(dao, FEW, 10)));
+        assertEquals(1 + 1000, countQueries(() -> findAll(dao, MANY, 1000)));
+    }
+
+    private static List<Person> persons(String name, int n) {
+        List<Person> persons = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Person p = new Person(0, name + " " + i, "Calle " + i);
+            p.getTelefonos().addAll(List.of("6000" + i, "9100" + i));
+            persons.add(p);
+        }
+        return persons;
+    }
+
+    private static void findAll(PersonDao dao, String name, int expected) throws SQLException {
+        List<Person> found = dao.findAll(name);
+        assertEquals(expected, found.size());
+        assertTrue(found.stream().allMatch(p -> p.getTelefonos().size() == 2));
+    }
+
+    /** Ejecuciones de sentencias sobre Personas o Telefonos mientras corre {@code work}. */
+    private static long countQueries(SqlWork work) throws SQLException {
+        try (Connection con = Db.getConnection(); Statement st = con.createStatement()) {
+            st.execute("SET QUERY_STATISTICS FALSE");
+            st.execute("SET QUERY_STATISTICS TRUE");
+            work.run();
+            try (ResultSet rs = st.executeQuery("SELECT COALESCE(SUM(EXECUTION_COUNT), 0) "
+                    + "FROM INFORMATION_SCHEMA.QUERY_STATISTICS "
+                    + "WHERE SQL_STATEMENT LIKE '%Personas%' OR SQL_STATEMENT LIKE '%Telefonos%'")) {
+                rs.next();
+                return rs.getLong(1);
+            } finally {
+                st.execute("SET QUERY_STATISTICS FALSE");
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.agenda.dao;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/** Forma canónica de {@link PhoneNumbers#normalize(String, int)}. */
+class PhoneNumbersTest {
+
+    @Test
+    void internationalPrefixesGiveTheSameNumber() {
+        assertEquals(34600111222L, PhoneNumbers.normalize("+34 600-11-12-22", 34));
+        assertEquals(34600111222L, PhoneNumbers.normalize("0034 600 111 222", 34));
+        assertEquals(34600111222L, PhoneNumbers.normalize("(+34) 600 11 12 22", 34));
+        assertEquals(15550100000L, PhoneNumbers.normalize("+1 (555) 010-0000", 34));
+        assertEquals(441234567890L, PhoneNumbers.normalize("0044 1234 567890", 0));
+    }
+
+    @Test
+    void nationalNumbersGetTheConfiguredCountry() {
+        assertEquals(34600111222L, PhoneNumbers.normalize("600 11 12 22", 34));
+        assertEquals(34911222333L, PhoneNumbers.normalize("(91) 122-23-33", 34));
+        assertEquals(351912345678L, PhoneNumbers.normalize("912 345 678", 351));
+        // Sin prefijo configurado se quedan como están
+        assertEquals(600111222L, PhoneNumbers.normalize("600 11 12 22", 0));
+    }
+
+    @Test
+    void textWithoutAUsableNumberHasNoForm() {
+        assertEquals(PhoneNumbers.NONE, PhoneNumbers.normalize(null, 34));
+        assertEquals(PhoneNumbers.NONE, PhoneNumbers.normalize("", 34));
+        assertEquals(PhoneNumbers.NONE, PhoneNumbers.normalize("sin teléfono", 34));
+        assertEquals(PhoneNumbers.NONE, PhoneNumbers.normalize("+", 34));
+        // 18 dígitos caben; 19 no, tampoco si los completa el prefijo del país
+        assertEquals(123456789012345678L, PhoneNumbers.normalize("+123456789012345678", 34));
+        assertEquals(PhoneNumbers.NONE, PhoneNumbers.normalize("+1234567890123456789", 34));
+        assertEquals(PhoneNumbers.NONE, PhoneNumbers.normalize("12345678901234567", 34));
+        assertEquals(12345678901234567L, PhoneNumbers.normalize("12345678901234567", 0));
+    }
+}
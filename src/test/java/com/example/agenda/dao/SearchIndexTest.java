@@ -0,0 +1,87 @@
+package com.example.agenda.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Relevancia, consultas cortas y de teléfono, y escrituras recibidas durante {@link SearchIndex#rebuild}. */
+class SearchIndexTest {
+
+    private static SearchIndex sample() {
+        SearchIndex index = new SearchIndex();
+        index.put(1, "Martín López", "Calle Mayor 1", List.of("600 11 12 22"));
+        index.put(2, "Ana Martínez", "Plaza 3", List.of());
+        index.put(3, "Samartín", "Ronda 5", List.of());
+        index.put(4, "Luis", "Mártires 4", List.of());
+        index.put(5, "Eva", "Calle Martín 8", List.of());
+        index.put(6, "Marta", "Sol 2", List.of());
+        index.put(7, "Pedro", "Ronda 9", List.of("+34 911 600 111"));
+        return index;
+    }
+
+    @Test
+    void resultsAreOrderedByWhereTheTextMatches() {
+        SearchIndex index = sample();
+        // Prefijo del nombre, palabra del nombre, dentro del nombre, prefijo de la dirección, dentro de la dirección
+        assertArrayEquals(new int[]{1, 6, 2, 3, 4, 5}, index.search("mart"));
+        assertArrayEquals(new int[]{1, 2, 3, 4, 5}, index.search("MARTÍ"));
+        assertArrayEquals(new int[]{1, 5}, index.search("calle"));
+        assertArrayEquals(new int[0], index.search("martinezz"));
+        assertArrayEquals(new int[0], index.search("  "));
+    }
+
+    @Test
+    void shortQueriesUseTheFieldMarkers() {
+        SearchIndex index = sample();
+        assertArrayEquals(new int[]{1, 6, 2, 3, 4, 5}, index.search("ma"));
+        assertArrayEquals(new int[]{1}, index.search("lo"));
+        assertArrayEquals(new int[]{3, 4, 6}, index.search("s"));
+        // El último carácter de un campo también empieza un trigrama
+        assertArrayEquals(new int[]{1, 2}, index.search("z"));
+    }
+
+    @Test
+    void onlyPhoneShapedQueriesLookAtTheDigits() {
+        SearchIndex index = sample();
+        assertArrayEquals(new int[]{1, 7}, index.search("600 111"));
+        assertArrayEquals(new int[]{1}, index.search("(600) 11-12"));
+        assertArrayEquals(new int[]{7}, index.search("+34 911"));
+        assertArrayEquals(new int[0], index.search("tel 600111"));
+        // La dirección puntúa más que el teléfono
+        index.put(8, "Olga", "Avenida 600", List.of());
+        assertArrayEquals(new int[]{8, 1, 7}, index.search("600"));
+    }
+
+    @Test
+    void writesDuringRebuildAreAppliedOnceOverTheScan() throws Exception {
+        SearchIndex index = new SearchIndex();
+        PersonDao dao = new PersonDao() {
+            @Override
+            public void scanAll(RowVisitor visitor) {
+                // Escritura anterior al recorrido: la lectura ya la incluye
+                index.addTelefono(1, "611 000 000");
+                visitor.visit(1, "Ana", "Calle 1", List.of("600111222", "611 000 000"));
+                visitor.visit(2, "Luis", "Calle 2", List.of());
+                visitor.visit(3, "Eva", "Calle 3", List.of("622333444"));
+                // Escrituras posteriores a la lectura de su fila
+                index.put(2, "Luis Alberto", "Calle 2", List.of());
+                index.remove(3);
+            }
+        };
+        index.rebuild(dao);
+
+        assertTrue(index.isReady());
+        assertEquals(List.of("600111222", "611000000"), index.telefonos(1));
+        assertArrayEquals(new int[]{2}, index.search("alberto"));
+        assertNull(index.telefonos(3));
+        assertEquals(2, index.size());
+
+        index.removeTelefono(1, "611000000");
+        assertArrayEquals(new int[0], index.search("611 000"));
+    }
+}